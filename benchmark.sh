@@ -0,0 +1,107 @@
+#!/bin/bash
+
+# Compares end-to-end throughput of the stack with a feature turned on and off.
+#
+# Usage: ./benchmark.sh <scenario> [payments] [concurrency]
+#   journal    -> RINHA_JOURNAL_ENABLED=false vs true
+#   ingestion  -> POST /payments straight to the Java API (no OpenResty),
+#                 RINHA_INGESTION_FAST_PATH=false (Jackson + Bean Validation) vs true (byte scan)
+#   summary    -> latency of GET /payments-summary over all processed payments,
+#                 RINHA_SUMMARY_AGGREGATION=client (ZRANGEBYSCORE + Java sum) vs lua (EVALSHA)
+#
+# Requires the payment processors to be running (shared 'payment-processor' network)
+# plus docker compose, curl, jq and uuidgen on the host.
+
+SCENARIO=${1:-journal}
+PAYMENTS=${2:-5000}
+CONCURRENCY=${3:-64}
+APP_URL=${APP_URL:-"http://localhost:9999"}
+COMPOSE_FILES=${COMPOSE_FILES:-"-f docker-compose.yml"}
+INGEST_URL=${INGEST_URL:-$APP_URL}
+DRAIN_TIMEOUT=${DRAIN_TIMEOUT:-120}
+SUMMARY_CALLS=${SUMMARY_CALLS:-50}
+
+cleanup() {
+  docker compose $COMPOSE_FILES down -v > /dev/null 2>&1
+}
+trap cleanup EXIT
+
+wait_until_ready() {
+  for (( i=0; i<60; i++ )); do
+    if curl -s -f --max-time 1 "${APP_URL}/payments-summary" > /dev/null; then
+      return 0
+    fi
+    sleep 1
+  done
+  echo "Application did not start in 60s." >&2
+  exit 1
+}
+
+processed_count() {
+  curl -s "${APP_URL}/payments-summary" | jq '.default.totalRequests + .fallback.totalRequests'
+}
+
+send_payments() {
+  seq "$PAYMENTS" | xargs -P "$CONCURRENCY" -I{} sh -c \
+    "curl -s -o /dev/null -X POST '${INGEST_URL}/payments' -H 'Content-Type: application/json' \
+      -d \"{\\\"correlationId\\\": \\\"\$(uuidgen | tr 'A-Z' 'a-z')\\\", \\\"amount\\\": 19.90}\""
+}
+
+# run_case <label> <ENV=value>...
+run_case() {
+  local label=$1
+  shift
+  cleanup
+  env "$@" docker compose $COMPOSE_FILES up -d > /dev/null 2>&1
+  wait_until_ready
+  curl -s -X POST "${APP_URL}/purge-payments" > /dev/null
+
+  local start=$(date +%s.%N)
+  send_payments
+  local ingested=$(date +%s.%N)
+
+  local processed=0
+  local deadline=$((SECONDS + DRAIN_TIMEOUT))
+  while [ "$processed" -lt "$PAYMENTS" ] && [ $SECONDS -lt $deadline ]; do
+    sleep 0.2
+    processed=$(processed_count)
+  done
+  local finished=$(date +%s.%N)
+
+  local ingest_secs=$(echo "$ingested - $start" | bc -l)
+  local total_secs=$(echo "$finished - $start" | bc -l)
+  printf "%-28s ingest %7.0f req/s | processed %6d/%d in %6.2fs -> %7.0f payments/s\n" \
+    "$label" "$(echo "$PAYMENTS / $ingest_secs" | bc -l)" "$processed" "$PAYMENTS" "$total_secs" \
+    "$(echo "$processed / $total_secs" | bc -l)"
+
+  if [ "$SCENARIO" = "summary" ]; then
+    local summary_start=$(date +%s.%N)
+    for (( i=0; i<SUMMARY_CALLS; i++ )); do
+      curl -s -o /dev/null "${APP_URL}/payments-summary"
+    done
+    local summary_secs=$(echo "$(date +%s.%N) - $summary_start" | bc -l)
+    printf "%-28s summary avg %7.1f ms over %d calls\n" \
+      "$label" "$(echo "$summary_secs * 1000 / $SUMMARY_CALLS" | bc -l)" "$SUMMARY_CALLS"
+  fi
+}
+
+case "$SCENARIO" in
+  journal)
+    run_case "journal=off" RINHA_JOURNAL_ENABLED=false
+    run_case "journal=on" RINHA_JOURNAL_ENABLED=true
+    ;;
+  ingestion)
+    COMPOSE_FILES="-f docker-compose.yml -f docker-compose.bench.yml"
+    INGEST_URL="http://localhost:9998"
+    run_case "ingestion=jackson" RINHA_INGESTION_FAST_PATH=false
+    run_case "ingestion=fast-path" RINHA_INGESTION_FAST_PATH=true
+    ;;
+  summary)
+    run_case "summary=client" RINHA_SUMMARY_AGGREGATION=client
+    run_case "summary=lua" RINHA_SUMMARY_AGGREGATION=lua
+    ;;
+  *)
+    echo "Unknown scenario: $SCENARIO" >&2
+    exit 1
+    ;;
+esac
@@ -8,8 +8,20 @@ if not (body and string.len(body) > 0) then
     return ngx.exit(ngx.HTTP_BAD_REQUEST)
 end
 
+-- Número de shards da fila. Deve ser igual a rinha.queue.shards nas APIs Java.
+local QUEUE_SHARDS = 4
+
+-- Escolhe o shard pelo CRC32 do correlationId (mesmo cálculo de PaymentStorageService.shardOf)
+local shard = 0
+local correlation_id = string.match(body, '"correlationId"%s*:%s*"([^"]+)"')
+if correlation_id then
+    -- Em minúsculas, como UUID.toString() no Java: o mesmo pagamento cai no mesmo shard nos dois lados
+    shard = ngx.crc32_long(string.lower(correlation_id)) % QUEUE_SHARDS
+end
+
 -- Carrega a biblioteca do Redis
 local redis = require "resty.redis"
+local resty_string = require "resty.string"
 local red, err = redis:new()
 
 if not red then
@@ -27,13 +39,63 @@ if not ok then
     return ngx.exit(500)
 end
 
--- Enfileira o pagamento usando LPUSH na nossa fila
-local ok, err = red:lpush("payments:queue", body)
-if not ok then
-    ngx.log(ngx.ERR, "failed to send LPUSH to redis: ", err)
+-- Enfileira o pagamento no shard escolhido da geração atual do keyspace (payments:{epoch}:queue:{i}).
+-- As duas chaves vão em KEYS: o epoch conhecido fica no shared dict e o script só faz o LPUSH se ele ainda
+-- for o atual, no mesmo passo atômico, para que um purge não separe a leitura do epoch e o enfileiramento.
+-- Se a geração mudou (purge ou restart do Redis), o script devolve o epoch novo e o LPUSH é refeito na chave nova.
+local ENQUEUE_SCRIPT = [[
+local epoch = redis.call('GET', KEYS[1]) or '0'
+if epoch ~= ARGV[1] then
+    return {0, epoch}
+end
+return {1, redis.call('LPUSH', KEYS[2], ARGV[2])}
+]]
+-- Chamado pelo SHA1 (EVALSHA); o corpo só vai ao Redis no SCRIPT LOAD, quando ele responde NOSCRIPT
+local ENQUEUE_SHA = resty_string.to_hex(ngx.sha1_bin(ENQUEUE_SCRIPT))
+local EPOCH_KEY = "payments:epoch"
+local epochs = ngx.shared.rinha
+
+local function enqueue(epoch)
+    local queue_key = "payments:" .. epoch .. ":queue:" .. shard
+    local res, err = red:evalsha(ENQUEUE_SHA, 2, EPOCH_KEY, queue_key, epoch, body)
+    if not res and err and string.find(err, "NOSCRIPT", 1, true) then
+        local loaded, load_err = red:script("LOAD", ENQUEUE_SCRIPT)
+        if not loaded then
+            return nil, load_err
+        end
+        res, err = red:evalsha(ENQUEUE_SHA, 2, EPOCH_KEY, queue_key, epoch, body)
+    end
+    return res, err
+end
+
+local enqueued, err = false, nil
+for attempt = 1, 3 do
+    local res
+    res, err = enqueue(epochs:get("epoch") or "0")
+    if not res then
+        break
+    end
+    if res[1] == 1 then
+        enqueued = true
+        break
+    end
+    epochs:set("epoch", res[2])
+    err = "keyspace epoch changed during enqueue"
+end
+if not enqueued then
+    ngx.log(ngx.ERR, "failed to enqueue payment in redis: ", err)
     return ngx.exit(500)
 end
 
+-- Journal (rinha.journal.enabled): o access_log "ingest" do nginx grava esta linha no ingest.log do
+-- diretório compartilhado com as APIs, que o usam para reconstruir a fila se o Redis perder o estado
+if os.getenv("RINHA_JOURNAL_ENABLED") == "true" and correlation_id then
+    local amount = string.match(body, '"amount"%s*:%s*([%d%.eE+-]+)')
+    if amount then
+        ngx.var.journal_line = string.lower(correlation_id) .. " " .. amount
+    end
+end
+
 -- Devolve a conexão ao pool do OpenResty para ser reutilizada
 local ok, err = red:set_keepalive(60000, 100)
 if not ok then
@@ -0,0 +1,83 @@
+#!/bin/bash
+
+# Regression guard for the number of Redis commands issued per payment.
+#
+# Builds the APIs from this tree (docker-compose.bench.yml), brings the stack up with
+# RINHA_REDIS_BUDGET_ENABLED=true, sends a batch of payments, waits for them
+# to be processed and reads /actuator/redisbudget from api01. Exits 1 when the average number of
+# commands per payment goes over the budget (RINHA_REDIS_BUDGET_MAX_COMMANDS_PER_PAYMENT, default 8).
+#
+# Usage: ./redis-budget.sh [payments] [concurrency]
+#   MAX_COMMANDS=6 ./redis-budget.sh 2000
+#
+# Requires the payment processors to be running (shared 'payment-processor' network)
+# plus docker compose, curl, jq and uuidgen on the host.
+
+PAYMENTS=${1:-2000}
+CONCURRENCY=${2:-32}
+APP_URL=${APP_URL:-"http://localhost:9999"}
+# api01 published directly by docker-compose.bench.yml (actuator is not routed through nginx)
+API_URL=${API_URL:-"http://localhost:9998"}
+COMPOSE_FILES=${COMPOSE_FILES:-"-f docker-compose.yml -f docker-compose.bench.yml"}
+DRAIN_TIMEOUT=${DRAIN_TIMEOUT:-120}
+MAX_COMMANDS=${MAX_COMMANDS:-8}
+
+cleanup() {
+  docker compose $COMPOSE_FILES down -v > /dev/null 2>&1
+}
+trap cleanup EXIT
+
+wait_until_ready() {
+  for (( i=0; i<60; i++ )); do
+    if curl -s -f --max-time 1 "${API_URL}/actuator/redisbudget" > /dev/null; then
+      return 0
+    fi
+    sleep 1
+  done
+  echo "Application did not start in 60s." >&2
+  exit 1
+}
+
+processed_count() {
+  curl -s "${APP_URL}/payments-summary" | jq '.default.totalRequests + .fallback.totalRequests'
+}
+
+cleanup
+# --build: the published image does not carry /actuator/redisbudget; the native build takes a few minutes
+if ! RINHA_REDIS_BUDGET_ENABLED=true RINHA_REDIS_BUDGET_MAX_COMMANDS_PER_PAYMENT=$MAX_COMMANDS \
+  docker compose $COMPOSE_FILES up -d --build > /dev/null; then
+  echo "Failed to build or start the stack." >&2
+  exit 1
+fi
+wait_until_ready
+curl -s -X POST "${APP_URL}/purge-payments" > /dev/null
+curl -s -X DELETE "${API_URL}/actuator/redisbudget" > /dev/null
+
+seq "$PAYMENTS" | xargs -P "$CONCURRENCY" -I{} sh -c \
+  "curl -s -o /dev/null -X POST '${APP_URL}/payments' -H 'Content-Type: application/json' \
+    -d \"{\\\"correlationId\\\": \\\"\$(uuidgen | tr 'A-Z' 'a-z')\\\", \\\"amount\\\": 19.90}\""
+
+processed=0
+deadline=$((SECONDS + DRAIN_TIMEOUT))
+while [ "$processed" -lt "$PAYMENTS" ] && [ $SECONDS -lt $deadline ]; do
+  sleep 0.5
+  processed=$(processed_count)
+done
+
+report=$(curl -s "${API_URL}/actuator/redisbudget")
+echo "$report" | jq -r '.byOutcome | to_entries[] |
+  "\(.key): \(.value.units) units, \(.value.commandsPerUnit | . * 100 | round / 100) commands/unit, \(.value.roundTrips) round trips\n" +
+  (.value.operations | to_entries | map("    \(.key) x\(.value.count) (\(.value.meanMs | . * 100 | round / 100) ms)") | join("\n"))'
+echo "--------------------------------------------------"
+printf "processed %d/%d | commands/payment %.2f (with background %.2f) | budget %s\n" "$processed" "$PAYMENTS" \
+  "$(echo "$report" | jq '.commandsPerPayment')" "$(echo "$report" | jq '.commandsPerPaymentWithBackground')" "$MAX_COMMANDS"
+
+if [ "$(echo "$report" | jq '.payments')" -eq 0 ]; then
+  echo "FAIL: no payments were accounted on api01." >&2
+  exit 1
+fi
+if [ "$(echo "$report" | jq '.withinBudget')" != "true" ]; then
+  echo "FAIL: Redis commands per payment over budget." >&2
+  exit 1
+fi
+echo "OK: within budget."
@@ -0,0 +1,20 @@
+#!/bin/bash
+
+# Replays a routing trace through one or more RoutingStrategy implementations
+# with the offline discrete-event simulator (no docker, no Redis).
+#
+# Usage: ./simulate.sh [trace.jsonl] [simulator options]
+#   ./simulate.sh traces/default-outage.jsonl
+#   ./simulate.sh traces/default-outage.jsonl --strategies adaptive,drain-time --workers 500 --seed 7
+#   ./simulate.sh traces/default-slow-burst.jsonl --instances 2
+#
+# Trace format and options are documented in RoutingSimulator, which lives in the test
+# sources (src/test/java) so it stays out of the application and the native image.
+
+TRACE=${1:-traces/default-outage.jsonl}
+shift
+
+./mvnw -B -q test-compile dependency:build-classpath -Dmdep.includeScope=test \
+  -Dmdep.outputFile=target/test-classpath.txt || exit 1
+java -cp "target/test-classes:target/classes:$(cat target/test-classpath.txt)" \
+  br.dev.felipeschirmann.rinha.routing.RoutingSimulator "$TRACE" "$@"
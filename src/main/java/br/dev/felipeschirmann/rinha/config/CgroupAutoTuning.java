@@ -0,0 +1,169 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.CommandLinePropertySource;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Deriva os tamanhos de pools, executores e event loops a partir dos limites do cgroup
+ * (cota de CPU e limite de memória do container), em vez de valores fixos por ambiente.
+ * Ligado por rinha.autotune.enabled. Qualquer valor definido explicitamente por variável
+ * de ambiente, propriedade de sistema ou linha de comando é respeitado e não é recalculado.
+ */
+public class CgroupAutoTuning implements EnvironmentPostProcessor {
+
+    static final String PROPERTY_SOURCE_NAME = "rinhaAutotune";
+    static final String ENABLED = "rinha.autotune.enabled";
+    // Valores detectados, expostos para o ConfigurationBanner
+    static final String DETECTED_CPUS = "rinha.autotune.detected-cpus";
+    static final String DETECTED_MEMORY_MB = "rinha.autotune.detected-memory-mb";
+    static final String APPLIED = "rinha.autotune.applied";
+    static final String IO_WORKER_COUNT = "reactor.netty.ioWorkerCount";
+    static final String CARRIER_PARALLELISM = "jdk.virtualThreadScheduler.parallelism";
+
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+    // Memória reservada para heap base, metaspace, buffers do Netty e do Redis antes de contar pagamentos em voo
+    private static final long BASELINE_MEMORY_MB = 64;
+    // O Redis é single-threaded e roda com pouca memória: mais conexões que isso só aumentam a fila dentro dele
+    private static final int REDIS_MAX_ACTIVE_CAP = 64;
+
+    // Propriedade -> variável de ambiente usada no placeholder do application.properties
+    private static final Map<String, String> OVERRIDES = Map.of(
+            "rinha.executor.consumer-threads", "RINHA_EXECUTOR_CONSUMER_THREADS",
+            "rinha.webclient.max-connections", "RINHA_WEBCLIENT_MAX_CONNECTIONS",
+            "spring.data.redis.jedis.pool.max-active", "REDIS_POOL_MAX_ACTIVE",
+            "spring.data.redis.jedis.pool.max-idle", "REDIS_POOL_MAX_IDLE",
+            "spring.data.redis.jedis.pool.min-idle", "REDIS_POOL_MIN_IDLE"
+    );
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!environment.getProperty(ENABLED, Boolean.class, false)) {
+            return;
+        }
+        double cpus = detectCpus();
+        long memoryMb = detectMemoryMb();
+        int cores = Math.max(1, (int) Math.ceil(cpus));
+
+        // Pagamentos em voo passam quase todo o tempo esperando o processador: a memória limita antes da CPU.
+        // Cada um segura uma virtual thread, uma conexão HTTP e alguns KB de buffers
+        int byCpu = (int) Math.round(cpus * 800);
+        int byMemory = (int) Math.max(16, (memoryMb - BASELINE_MEMORY_MB) * 4);
+        int consumerThreads = clamp(Math.min(byCpu, byMemory), 16, 1024);
+        // Base dos pools de pagamento por processador: todos os pagamentos em voo podem ir para um só deles
+        int maxConnections = consumerThreads;
+        // Comandos Redis são curtos: metade dos pagamentos em voo, mais os loops bloqueantes (BRPOP, Pub/Sub)
+        int redisMaxActive = clamp(consumerThreads / 2 + 8, 16, REDIS_MAX_ACTIVE_CAP);
+
+        Map<String, Object> tuned = new LinkedHashMap<>();
+        List<String> applied = new ArrayList<>();
+        put(environment, tuned, applied, "rinha.executor.consumer-threads", consumerThreads);
+        put(environment, tuned, applied, "rinha.webclient.max-connections", maxConnections);
+        put(environment, tuned, applied, "spring.data.redis.jedis.pool.max-active", redisMaxActive);
+        put(environment, tuned, applied, "spring.data.redis.jedis.pool.max-idle", Math.max(4, redisMaxActive / 2));
+        put(environment, tuned, applied, "spring.data.redis.jedis.pool.min-idle", Math.max(2, cores * 2));
+
+        // Estas duas precisam virar propriedades de sistema antes do Netty e do primeiro virtual thread subirem
+        setSystemProperty(IO_WORKER_COUNT, cores, applied);
+        setSystemProperty(CARRIER_PARALLELISM, cores, applied);
+
+        tuned.put(DETECTED_CPUS, String.format(Locale.ROOT, "%.2f", cpus));
+        tuned.put(DETECTED_MEMORY_MB, memoryMb);
+        tuned.put(APPLIED, String.join(",", applied));
+        environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME, tuned));
+    }
+
+    private static void put(ConfigurableEnvironment environment, Map<String, Object> tuned, List<String> applied,
+                            String property, int value) {
+        if (isExplicit(environment, property)) {
+            return;
+        }
+        tuned.put(property, value);
+        applied.add(property);
+    }
+
+    private static void setSystemProperty(String property, int value, List<String> applied) {
+        if (System.getProperty(property) != null) {
+            return;
+        }
+        System.setProperty(property, String.valueOf(value));
+        applied.add(property);
+    }
+
+    // Definido pelo operador: variável do placeholder, variável/propriedade com o próprio nome ou argumento de linha de comando
+    private static boolean isExplicit(ConfigurableEnvironment environment, String property) {
+        String envVar = OVERRIDES.get(property);
+        if (envVar != null && System.getenv(envVar) != null) {
+            return true;
+        }
+        for (PropertySource<?> source : environment.getPropertySources()) {
+            String name = source.getName();
+            boolean external = name.equals(StandardEnvironment.SYSTEM_ENVIRONMENT_PROPERTY_SOURCE_NAME)
+                    || name.equals(StandardEnvironment.SYSTEM_PROPERTIES_PROPERTY_SOURCE_NAME)
+                    || source instanceof CommandLinePropertySource;
+            if (external && source.containsProperty(property)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // cgroup v2 (cpu.max) com fallback para v1 (cfs_quota/cfs_period) e, sem limite, para os núcleos visíveis
+    static double detectCpus() {
+        String max = read(CGROUP_ROOT.resolve("cpu.max"));
+        if (max != null) {
+            String[] parts = max.split("\\s+");
+            if (parts.length == 2 && !parts[0].equals("max")) {
+                return Double.parseDouble(parts[0]) / Double.parseDouble(parts[1]);
+            }
+        } else {
+            String quota = read(CGROUP_ROOT.resolve("cpu/cpu.cfs_quota_us"));
+            String period = read(CGROUP_ROOT.resolve("cpu/cpu.cfs_period_us"));
+            if (quota != null && period != null && Long.parseLong(quota) > 0) {
+                return Double.parseDouble(quota) / Double.parseDouble(period);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // cgroup v2 (memory.max) com fallback para v1 (memory.limit_in_bytes) e, sem limite, para o heap máximo
+    static long detectMemoryMb() {
+        String limit = read(CGROUP_ROOT.resolve("memory.max"));
+        if (limit == null) {
+            limit = read(CGROUP_ROOT.resolve("memory/memory.limit_in_bytes"));
+        }
+        if (limit != null && !limit.equals("max")) {
+            long bytes = Long.parseLong(limit);
+            // O cgroup v1 sem limite reporta um valor próximo de Long.MAX_VALUE
+            if (bytes < Long.MAX_VALUE / 2) {
+                return bytes / (1024 * 1024);
+            }
+        }
+        return Runtime.getRuntime().maxMemory() / (1024 * 1024);
+    }
+
+    private static String read(Path path) {
+        try {
+            return Files.isReadable(path) ? Files.readString(path).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
\ No newline at end of file
@@ -39,6 +39,7 @@ public class ConfigurationBanner implements ApplicationRunner {
                 ╠═══════════════════════════╬═════════════════════════════════════════════════╣
                 ║ Executor de Consumidores  ║                                                 ║
                 ║   Threads                 ║ %-47s ║
+                ║   Pagamentos em Voo       ║ %-47d ║
                 ╠═══════════════════════════╬═════════════════════════════════════════════════╣
                 ║ Agendador de Estratégia   ║                                                 ║
                 ║   Período de Decisão      ║ %-47s ║
@@ -48,6 +49,15 @@ public class ConfigurationBanner implements ApplicationRunner {
                 ║   Timeout de Conexão      ║ %-47s ║
                 ║   Timeout de Resposta     ║ %-47s ║
                 ╠═══════════════════════════╬═════════════════════════════════════════════════╣
+                ║ Pool do Redis (Jedis)     ║                                                 ║
+                ║   Ativas / Ociosas        ║ %-47s ║
+                ╠═══════════════════════════╬═════════════════════════════════════════════════╣
+                ║ Autoajuste (cgroup)       ║                                                 ║
+                ║   CPUs / Memória          ║ %-47s ║
+                ║   Event Loops (Netty)     ║ %-47s ║
+                ║   Carriers (Virtual Th.)  ║ %-47s ║
+                ║   Valores Derivados       ║ %-47s ║
+                ╠═══════════════════════════╬═════════════════════════════════════════════════╣
                 ║ Monitor de Memória        ║                                                 ║
                 ║   Limite para Aviso       ║ %-47s ║
                 ║   Atraso Inicial          ║ %-47s ║
@@ -60,17 +70,34 @@ public class ConfigurationBanner implements ApplicationRunner {
             activeProfiles = Arrays.toString(environment.getDefaultProfiles());
         }
 
+        boolean autotuneEnabled = environment.getProperty(CgroupAutoTuning.ENABLED, Boolean.class, false);
+        String applied = environment.getProperty(CgroupAutoTuning.APPLIED, "");
+        long derivedCount = applied.isEmpty() ? 0 : applied.split(",").length;
+
         logger.info(String.format(banner,
                 activeProfiles,
                 rinhaProperties.queue().maxSize(),
                 "Virtual Threads (Dinâmico)",
+                rinhaProperties.executor().consumerThreads(),
                 rinhaProperties.scheduler().strategyDecisionPeriodMs() + " ms",
                 rinhaProperties.webclient().maxConnections(),
                 rinhaProperties.webclient().connectTimeoutMs() + " ms",
                 rinhaProperties.webclient().responseTimeoutSec() + " s",
+                environment.getProperty("spring.data.redis.jedis.pool.max-active", "8") + " / "
+                        + environment.getProperty("spring.data.redis.jedis.pool.max-idle", "8"),
+                autotuneEnabled
+                        ? environment.getProperty(CgroupAutoTuning.DETECTED_CPUS) + " / "
+                        + environment.getProperty(CgroupAutoTuning.DETECTED_MEMORY_MB) + " MB"
+                        : "Desligado",
+                System.getProperty(CgroupAutoTuning.IO_WORKER_COUNT, "Padrão do Netty"),
+                System.getProperty(CgroupAutoTuning.CARRIER_PARALLELISM, "Padrão da JVM"),
+                autotuneEnabled ? derivedCount + " parâmetros (overrides explícitos preservados)" : "-",
                 rinhaProperties.memoryMonitor().reportingThresholdMb() + " MB",
                 rinhaProperties.memoryMonitor().initialDelaySec() + " s",
                 rinhaProperties.memoryMonitor().periodSec() + " s"
         ));
+        if (autotuneEnabled) {
+            logger.info("Autoajuste pelo cgroup aplicado em: {}", applied.isEmpty() ? "nenhum parâmetro" : applied);
+        }
     }
 }
\ No newline at end of file
@@ -1,9 +1,7 @@
 package br.dev.felipeschirmann.rinha.config;
 
+import br.dev.felipeschirmann.rinha.service.RedisCommandBudget;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,9 +10,8 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
-import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
 
 
@@ -26,31 +23,6 @@ public class HttpConfig {
         return WebClient.builder();
     }
 
-    // BEAN DO RESTCLIENT CORRIGIDO E DE ALTA PERFORMANCE
-    @Bean
-    public RestClient.Builder restClientBuilder(RinhaProperties rinhaProperties) {
-        RinhaProperties.Webclient props = rinhaProperties.webclient();
-
-        // 1. Cria um gerenciador de pool de conexões
-        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-        connectionManager.setMaxTotal(props.maxConnections()); // Total de conexões no pool
-        connectionManager.setDefaultMaxPerRoute(props.maxConnections()); // Total por host
-
-        // 2. Cria o cliente Apache usando o gerenciador de pool
-        CloseableHttpClient httpClient = HttpClients.custom()
-                .setConnectionManager(connectionManager)
-                .build();
-
-        // 3. Cria a factory do Spring que usa o cliente Apache
-        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
-        factory.setConnectTimeout(props.connectTimeoutMs());
-        // setReadTimeout foi depreciado, usamos setConnectionRequestTimeout
-        factory.setConnectionRequestTimeout(props.responseTimeoutSec() * 1000);
-
-        // 4. Retorna o RestClient.Builder usando a factory com pool
-        return RestClient.builder().requestFactory(factory);
-    }
-
     @Bean
     public JedisConnectionFactory redisConnectionFactory(RedisProperties redisProperties) {
         // Configura os detalhes básicos da conexão (host, porta)
@@ -60,9 +32,16 @@ public class HttpConfig {
 
         // Configura o pool de conexões usando as propriedades do application.properties
         RedisProperties.Pool poolProps = redisProperties.getJedis().getPool();
+        GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(poolProps.getMaxActive());
+        poolConfig.setMaxIdle(poolProps.getMaxIdle());
+        poolConfig.setMinIdle(poolProps.getMinIdle());
+        if (poolProps.getMaxWait() != null) {
+            poolConfig.setMaxWait(poolProps.getMaxWait()); // Negativo = espera sem limite
+        }
         JedisClientConfiguration clientConfig = JedisClientConfiguration.builder()
                 .usePooling()
-                .poolConfig(new GenericObjectPoolConfig<>())
+                .poolConfig(poolConfig)
                 .and()
                 .build();
 
@@ -70,12 +49,21 @@ public class HttpConfig {
     }
 
     @Bean
-    public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
+    public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory, RedisCommandBudget commandBudget) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
+        // Com rinha.redis-budget.enabled, cada comando passa pela contabilidade por pagamento
+        template.setConnectionFactory(commandBudget.wrap(connectionFactory));
         // Define que as chaves e valores serão serializados como Strings simples
         template.setKeySerializer(new StringRedisSerializer());
         template.setValueSerializer(new StringRedisSerializer());
         return template;
     }
+
+    // Container único de Pub/Sub: mantém uma só conexão de subscribe por instância
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.function.Predicate;
+
+/**
+ * Rejeições do bulkhead (pool HTTP cheio) não chegaram ao processador e não devem abrir o circuit breaker.
+ * Registrado em resilience4j.circuitbreaker.instances.*.ignore-exception-predicate.
+ */
+public class PoolRejectionPredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable throwable) {
+        return throwable instanceof ResourceAccessException && throwable.getCause() instanceof ConnectionRequestTimeoutException;
+    }
+}
\ No newline at end of file
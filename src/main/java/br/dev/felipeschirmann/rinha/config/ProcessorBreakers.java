@@ -0,0 +1,83 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.BreakerTuning;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Circuit breakers dos processadores (resilience4j.circuitbreaker.instances.{default,fallback}-processor).
+ * A configuração de um breaker é imutável: o ajuste em tempo de execução troca a instância no registry,
+ * por isso quem usa um breaker deve buscá-lo aqui a cada chamada em vez de guardar a referência.
+ */
+@Component
+public class ProcessorBreakers {
+
+    private final CircuitBreakerRegistry registry;
+    private final List<BiConsumer<ProcessorType, CircuitBreaker>> replacementListeners = new CopyOnWriteArrayList<>();
+
+    public ProcessorBreakers(CircuitBreakerRegistry registry) {
+        this.registry = registry;
+        // Cria os dois já na subida, para que as métricas existam antes do primeiro pagamento
+        for (ProcessorType type : ProcessorType.values()) {
+            registry.circuitBreaker(name(type));
+        }
+    }
+
+    public static String name(ProcessorType type) {
+        return type == ProcessorType.DEFAULT ? "default-processor" : "fallback-processor";
+    }
+
+    public CircuitBreaker get(ProcessorType type) {
+        return registry.circuitBreaker(name(type));
+    }
+
+    public BreakerTuning tuning(ProcessorType type) {
+        CircuitBreakerConfig config = get(type).getCircuitBreakerConfig();
+        return new BreakerTuning(config.getFailureRateThreshold(), config.getSlidingWindowSize(),
+                config.getMinimumNumberOfCalls(), config.getWaitIntervalFunctionInOpenState().apply(1),
+                config.getPermittedNumberOfCallsInHalfOpenState());
+    }
+
+    // Chamado depois da troca, com o novo breaker (ex: para reassinar os eventos)
+    public void onReplaced(BiConsumer<ProcessorType, CircuitBreaker> listener) {
+        replacementListeners.add(listener);
+    }
+
+    /**
+     * Troca o breaker por um novo com a configuração ajustada, preservando o resto (predicados, tipo de janela)
+     * e o estado aberto ou em teste: um processador em queda não ganha uma janela nova só porque o ajuste mudou.
+     */
+    public synchronized CircuitBreaker reconfigure(ProcessorType type, BreakerTuning tuning) {
+        CircuitBreaker current = get(type);
+        CircuitBreakerConfig config = CircuitBreakerConfig.from(current.getCircuitBreakerConfig())
+                .failureRateThreshold(tuning.failureRateThreshold())
+                .slidingWindowSize(tuning.slidingWindowSize())
+                .minimumNumberOfCalls(tuning.minimumNumberOfCalls())
+                .waitDurationInOpenState(Duration.ofMillis(tuning.waitDurationInOpenStateMs()))
+                .permittedNumberOfCallsInHalfOpenState(tuning.permittedNumberOfCallsInHalfOpenState())
+                .build();
+        CircuitBreaker replacement = CircuitBreaker.of(name(type), config, current.getTags());
+        switch (current.getState()) {
+            case OPEN -> replacement.transitionToOpenState();
+            case FORCED_OPEN -> replacement.transitionToForcedOpenState();
+            case HALF_OPEN -> {
+                // Mantém o teste de recuperação em andamento (ex: a instância que ganhou o lease do cluster)
+                replacement.transitionToOpenState();
+                replacement.transitionToHalfOpenState();
+            }
+            default -> {
+            }
+        }
+        registry.replace(name(type), replacement);
+        replacementListeners.forEach(listener -> listener.accept(type, replacement));
+        return replacement;
+    }
+}
\ No newline at end of file
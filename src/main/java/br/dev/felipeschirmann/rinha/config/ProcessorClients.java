@@ -0,0 +1,156 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.service.AdaptiveTimeoutService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Um pool HTTP por processador e por classe de tráfego (bulkheads). Um processador travado só esgota as
+ * conexões dele, e as verificações e health checks não disputam conexões com os pagamentos.
+ * Quando um pool está cheio, a espera é limitada por connectionRequestTimeoutMs e a chamada é rejeitada.
+ */
+@Component
+public class ProcessorClients {
+
+    public enum TrafficClass {PAYMENT, VERIFY, HEALTH}
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessorClients.class);
+
+    private final Map<ProcessorType, Map<TrafficClass, RestClient>> clients = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, Map<TrafficClass, Counter>> rejections = new EnumMap<>(ProcessorType.class);
+    private final List<CloseableHttpClient> httpClients = new ArrayList<>();
+
+    public ProcessorClients(RinhaProperties rinhaProperties,
+                            AdaptiveTimeoutService timeoutService,
+                            MeterRegistry meterRegistry,
+                            @Value("${processor.default.url}") String defaultUrl,
+                            @Value("${processor.fallback.url}") String fallbackUrl) {
+        RinhaProperties.Pools pools = rinhaProperties.pools();
+        int maxConnections = rinhaProperties.webclient().maxConnections();
+        int connectTimeoutMs = rinhaProperties.webclient().connectTimeoutMs();
+        // Um health check não pode durar mais que um intervalo de renovação do lease de líder
+        long healthTimeoutCapMs = Math.max(1, rinhaProperties.health().leaseMs() / 3 - 1);
+
+        for (ProcessorType type : ProcessorType.values()) {
+            String baseUrl = type == ProcessorType.DEFAULT ? defaultUrl : fallbackUrl;
+            Map<TrafficClass, RestClient> byClass = new EnumMap<>(TrafficClass.class);
+            Map<TrafficClass, Counter> rejectionsByClass = new EnumMap<>(TrafficClass.class);
+            for (TrafficClass trafficClass : TrafficClass.values()) {
+                RinhaProperties.Pool pool = switch (trafficClass) {
+                    case PAYMENT -> pools.payment();
+                    case VERIFY -> pools.verify();
+                    case HEALTH -> pools.health();
+                };
+                int size = pool.maxConnections() > 0 ? pool.maxConnections() : switch (trafficClass) {
+                    case PAYMENT -> maxConnections;
+                    case VERIFY -> Math.max(8, maxConnections / 4);
+                    case HEALTH -> 2;
+                };
+                String[] tags = {"processor", type.name().toLowerCase(), "class", trafficClass.name().toLowerCase()};
+
+                PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+                connectionManager.setMaxTotal(size);
+                connectionManager.setDefaultMaxPerRoute(size);
+                connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        // Revalida conexões paradas há mais que isso antes de reutilizá-las
+                        .setValidateAfterInactivity(TimeValue.ofMilliseconds(pool.validateAfterInactivityMs()))
+                        .build());
+
+                CloseableHttpClient httpClient = HttpClients.custom()
+                        .setConnectionManager(connectionManager)
+                        .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(pool.keepAliveMs()))
+                        .evictIdleConnections(TimeValue.ofMilliseconds(pool.keepAliveMs()))
+                        .build();
+                httpClients.add(httpClient);
+
+                HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient);
+                factory.setConnectTimeout(connectTimeoutMs);
+                factory.setConnectionRequestTimeout((int) pool.connectionRequestTimeoutMs());
+                Timeout connectionRequestTimeout = Timeout.ofMilliseconds(pool.connectionRequestTimeoutMs());
+                if (trafficClass == TrafficClass.PAYMENT) {
+                    // Prazo de resposta por requisição: o timeout adaptativo do processador
+                    factory.setHttpContextFactory((method, uri) -> {
+                        HttpClientContext context = HttpClientContext.create();
+                        context.setRequestConfig(RequestConfig.custom()
+                                .setConnectionRequestTimeout(connectionRequestTimeout)
+                                .setResponseTimeout(Timeout.ofMilliseconds(timeoutService.responseTimeoutMs(type)))
+                                .build());
+                        return context;
+                    });
+                } else {
+                    long responseTimeoutMs = trafficClass == TrafficClass.HEALTH
+                            ? Math.min(pool.responseTimeoutMs(), healthTimeoutCapMs)
+                            : pool.responseTimeoutMs();
+                    Timeout responseTimeout = Timeout.ofMilliseconds(responseTimeoutMs);
+                    factory.setHttpContextFactory((method, uri) -> {
+                        HttpClientContext context = HttpClientContext.create();
+                        context.setRequestConfig(RequestConfig.custom()
+                                .setConnectionRequestTimeout(connectionRequestTimeout)
+                                .setResponseTimeout(responseTimeout)
+                                .build());
+                        return context;
+                    });
+                }
+                byClass.put(trafficClass, RestClient.builder().requestFactory(factory).baseUrl(baseUrl).build());
+
+                Gauge.builder("rinha.http.pool.leased", connectionManager, m -> m.getTotalStats().getLeased())
+                        .description("Conexões em uso no pool").tags(tags).register(meterRegistry);
+                Gauge.builder("rinha.http.pool.available", connectionManager, m -> m.getTotalStats().getAvailable())
+                        .description("Conexões ociosas no pool").tags(tags).register(meterRegistry);
+                Gauge.builder("rinha.http.pool.pending", connectionManager, m -> m.getTotalStats().getPending())
+                        .description("Requisições esperando uma conexão do pool").tags(tags).register(meterRegistry);
+                Gauge.builder("rinha.http.pool.max", connectionManager, m -> m.getTotalStats().getMax())
+                        .description("Tamanho máximo do pool").tags(tags).register(meterRegistry);
+                rejectionsByClass.put(trafficClass, Counter.builder("rinha.http.pool.rejections")
+                        .description("Chamadas rejeitadas por pool cheio (bulkhead)").tags(tags).register(meterRegistry));
+
+                logger.info("Pool HTTP {}/{}: {} conexões, espera máxima {} ms.", type, trafficClass, size, pool.connectionRequestTimeoutMs());
+            }
+            clients.put(type, byClass);
+            rejections.put(type, rejectionsByClass);
+        }
+    }
+
+    public RestClient client(ProcessorType type, TrafficClass trafficClass) {
+        return clients.get(type).get(trafficClass);
+    }
+
+    public void recordRejection(ProcessorType type, TrafficClass trafficClass) {
+        rejections.get(type).get(trafficClass).increment();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (CloseableHttpClient httpClient : httpClients) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                logger.warn("Falha ao fechar cliente HTTP", e);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import br.dev.felipeschirmann.rinha.service.RedisCommandBudget;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/redisbudget: comandos Redis por pagamento, por resultado e por operação.
+ * DELETE zera a contagem (o redis-budget.sh zera antes de cada rodada).
+ */
+@Component
+@Endpoint(id = "redisbudget")
+public class RedisBudgetEndpoint {
+
+    private final RedisCommandBudget commandBudget;
+
+    public RedisBudgetEndpoint(RedisCommandBudget commandBudget) {
+        this.commandBudget = commandBudget;
+    }
+
+    @ReadOperation
+    public Map<String, Object> budget() {
+        return commandBudget.report();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        commandBudget.reset();
+    }
+}
\ No newline at end of file
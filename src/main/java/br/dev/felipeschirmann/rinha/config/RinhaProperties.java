@@ -2,6 +2,8 @@ package br.dev.felipeschirmann.rinha.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.UUID;
+
 @ConfigurationProperties(prefix = "rinha")
 public record RinhaProperties(
         Queue queue,
@@ -9,21 +11,131 @@ public record RinhaProperties(
         Scheduler scheduler,
         Executor executor,
         MemoryMonitor memoryMonitor,
-        Processor processor
+        Processor processor,
+        Instance instance,
+        Health health,
+        Journal journal,
+        Ingestion ingestion,
+        Deadline deadline,
+        Summary summary,
+        Pools pools,
+        ClusterBreaker clusterBreaker,
+        Routing routing,
+        RedisBudget redisBudget,
+        Tuning tuning
 ) {
     public RinhaProperties {
-        if (queue == null) queue = new Queue(50000, 15000);
+        if (queue == null) queue = new Queue(50000, 15000, 4);
         if (webclient == null) webclient = new Webclient(2000, 5, 500, 1000);
-        if (scheduler == null) scheduler = new Scheduler(3000, 100); // Ex: 1000ms e 100ms
-        if (executor == null) executor = new Executor(50);
-        if (memoryMonitor == null) memoryMonitor = new MemoryMonitor(50, 5, 5);
+        if (scheduler == null) scheduler = new Scheduler(3000, 100, 500); // Ex: 1000ms, 100ms e 500 escritas
+        if (executor == null) executor = new Executor(50, 0);
+        if (memoryMonitor == null) memoryMonitor = new MemoryMonitor(50, 5, 5, true, 0.75, 0.90, 0.60, 0.20, 5);
         if (processor == null) processor = new Processor(1, 4300);
+        if (instance == null) instance = new Instance(null, -1, 1);
+        if (health == null) health = new Health(5000, 3000);
+        if (journal == null) journal = new Journal(false, "/var/lib/rinha", 64, 50, 0);
+        if (ingestion == null) ingestion = new Ingestion(true, 0, 0);
+        if (deadline == null) deadline = new Deadline(true, 100, 10000, 3.0, 0.99, 512);
+        if (summary == null) summary = new Summary(Summary.Aggregation.LUA, 0);
+        if (pools == null) pools = new Pools(null, null, null);
+        if (clusterBreaker == null) clusterBreaker = new ClusterBreaker(true, 250, 10, 0.5, 50, 5000, 2000);
+        if (routing == null) routing = new Routing(null, 0, 0, 0, 0, 0, 0);
+        if (redisBudget == null) redisBudget = new RedisBudget(false, 0);
+        if (tuning == null) tuning = new Tuning(null);
     }
 
     public record Queue(
             int maxSize,
-            int fallbackTriggerSize
+            int fallbackTriggerSize,
+            int shards
+    ) {
+        public Queue {
+            if (shards < 1) shards = 1;
+        }
+    }
+
+    // Pools HTTP separados por processador e por classe de tráfego (pagamento, verificação, health check)
+    public record Pools(
+            Pool payment,
+            Pool verify,
+            Pool health
+    ) {
+        public Pools {
+            // maxConnections 0 = derivado de rinha.webclient.max-connections
+            if (payment == null) payment = new Pool(0, 200, 0, 30000, 2000);
+            if (verify == null) verify = new Pool(0, 1000, 10000, 30000, 2000);
+            if (health == null) health = new Pool(2, 1000, 800, 30000, 2000);
+        }
+    }
+
+    // responseTimeoutMs é ignorado no pool de pagamento, que usa o prazo adaptativo (rinha.deadline)
+    public record Pool(
+            int maxConnections,
+            long connectionRequestTimeoutMs,
+            long responseTimeoutMs,
+            long keepAliveMs,
+            long validateAfterInactivityMs
+    ) {
+    }
+
+    // Circuit breaker compartilhado entre as instâncias: resultados agregados em buckets de 1 s no Redis
+    public record ClusterBreaker(
+            boolean enabled,
+            long flushPeriodMs,
+            int windowSec,
+            double failureRateThreshold,
+            int minimumCalls,
+            long openMs,
+            long probeLeaseMs
+    ) {
+        public ClusterBreaker {
+            if (flushPeriodMs <= 0) flushPeriodMs = 250;
+            if (windowSec <= 0) windowSec = 10;
+            if (failureRateThreshold <= 0) failureRateThreshold = 0.5;
+            if (minimumCalls <= 0) minimumCalls = 50;
+            if (openMs <= 0) openMs = 5000;
+            if (probeLeaseMs <= 0) probeLeaseMs = 2000;
+        }
+    }
+
+    // Estratégia de roteamento (nome registrado em RoutingStrategies) e parâmetros do controlador por tempo de dreno
+    public record Routing(
+            String strategy,
+            long targetDrainMs,
+            double ewmaAlpha,
+            double maxSpillFraction,
+            long drainDeadlineMs,
+            double defaultFee,
+            double fallbackFee
+    ) {
+        public Routing {
+            if (strategy == null || strategy.isBlank()) strategy = "adaptive";
+            if (targetDrainMs <= 0) targetDrainMs = 2000;
+            if (ewmaAlpha <= 0 || ewmaAlpha > 1) ewmaAlpha = 0.3;
+            if (maxSpillFraction <= 0 || maxSpillFraction > 1) maxSpillFraction = 1.0;
+            if (drainDeadlineMs <= 0) drainDeadlineMs = 30000;
+            if (defaultFee <= 0) defaultFee = 0.05;
+            if (fallbackFee <= 0) fallbackFee = 0.15;
+        }
+    }
+
+    // Contabilidade de comandos Redis por pagamento (RedisCommandBudget) e o orçamento verificado pelo redis-budget.sh
+    public record RedisBudget(
+            boolean enabled,
+            double maxCommandsPerPayment
+    ) {
+        public RedisBudget {
+            if (maxCommandsPerPayment <= 0) maxCommandsPerPayment = 8;
+        }
+    }
+
+    // Token exigido no header X-Admin-Token pelos endpoints /admin/tuning; vazio desliga os endpoints
+    public record Tuning(
+            String adminToken
     ) {
+        public Tuning {
+            if (adminToken == null) adminToken = "";
+        }
     }
 
     public record Webclient(
@@ -34,24 +146,48 @@ public record RinhaProperties(
     ) {
     }
 
-    // Scheduler agora só tem a decisão de estratégia
+    // Decisão de estratégia e write-behind do sumário no Redis
     public record Scheduler(
             int strategyDecisionPeriodMs,
-            int redisBatchPeriodMs
+            int redisBatchPeriodMs,
+            int redisBatchMaxSize
     ) {
+        public Scheduler {
+            if (redisBatchPeriodMs < 1) redisBatchPeriodMs = 100;
+            if (redisBatchMaxSize < 1) redisBatchMaxSize = 500;
+        }
     }
 
     // Novo record específico para o pool de consumidores
+    // drainTimeoutMs: prazo no desligamento para os pagamentos em voo terminarem antes de serem devolvidos ao Redis
     public record Executor(
-            int consumerThreads
+            int consumerThreads,
+            long drainTimeoutMs
     ) {
+        public Executor {
+            if (drainTimeoutMs <= 0) drainTimeoutMs = 5000;
+        }
     }
 
+    // Watermarks são frações da old gen ocupada após o GC; gcPauseBudget é a fração do tempo gasta em pausas
     public record MemoryMonitor(
             long reportingThresholdMb,
             int initialDelaySec,
-            int periodSec
+            int periodSec,
+            boolean throttle,
+            double slowWatermark,
+            double pauseWatermark,
+            double resumeWatermark,
+            double gcPauseBudget,
+            long slowDelayMs
     ) {
+        public MemoryMonitor {
+            if (slowWatermark <= 0) slowWatermark = 0.75;
+            if (pauseWatermark <= 0) pauseWatermark = 0.90;
+            if (resumeWatermark <= 0 || resumeWatermark >= slowWatermark) resumeWatermark = slowWatermark * 0.8;
+            if (gcPauseBudget <= 0) gcPauseBudget = 0.20;
+            if (slowDelayMs <= 0) slowDelayMs = 5;
+        }
     }
 
     public record Processor(
@@ -59,4 +195,83 @@ public record RinhaProperties(
             long healthDataMaxAgeMs
     ) {
     }
+
+    // Identifica esta instância nos protocolos distribuídos (ex: liderança do health check)
+    public record Instance(
+            String id,
+            int index,
+            int count
+    ) {
+        public Instance {
+            if (id == null || id.isBlank()) id = UUID.randomUUID().toString();
+            if (count < 1) count = 1;
+            // Sem índice explícito, deriva do sufixo numérico do hostname (api01 -> 0, api02 -> 1)
+            if (index < 0) index = Math.floorMod(trailingNumber(id) - 1, count);
+        }
+
+        private static int trailingNumber(String value) {
+            int i = value.length();
+            while (i > 0 && Character.isDigit(value.charAt(i - 1))) i--;
+            if (i == value.length() || value.length() - i > 9) return 1;
+            return Integer.parseInt(value.substring(i));
+        }
+    }
+
+    public record Health(
+            long probePeriodMs,
+            long leaseMs
+    ) {
+    }
+
+    // Journal local (write-ahead) de pagamentos aceitos e liquidados
+    public record Journal(
+            boolean enabled,
+            String dir,
+            int sizeMb,
+            int fsyncPeriodMs,
+            long replayDelayMs
+    ) {
+        public Journal {
+            if (replayDelayMs <= 0) replayDelayMs = 5000;
+        }
+    }
+
+    // batchChunkSize: registros de POST /payments/batch por pipeline de LPUSH; batchMaxRecordBytes: maior registro aceito
+    public record Ingestion(
+            boolean fastPath,
+            int batchChunkSize,
+            int batchMaxRecordBytes
+    ) {
+        public Ingestion {
+            if (batchChunkSize <= 0) batchChunkSize = 500;
+            if (batchMaxRecordBytes <= 0) batchMaxRecordBytes = 4096;
+        }
+    }
+
+    // Timeout de resposta por processador, recalculado a partir do minResponseTime e da latência observada
+    public record Deadline(
+            boolean adaptive,
+            long minMs,
+            long maxMs,
+            double multiplier,
+            double percentile,
+            int sampleSize
+    ) {
+    }
+
+    public record Summary(
+            Aggregation aggregation,
+            long clusterFlushTimeoutMs
+    ) {
+        public Summary {
+            if (aggregation == null) aggregation = Aggregation.LUA;
+            if (clusterFlushTimeoutMs <= 0) clusterFlushTimeoutMs = 200;
+        }
+
+        // LUA: soma dentro do Redis via EVALSHA; CLIENT: traz os membros e soma no Java
+        public enum Aggregation {
+            LUA,
+            CLIENT
+        }
+    }
 }
\ No newline at end of file
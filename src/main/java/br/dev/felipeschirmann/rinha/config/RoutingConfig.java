@@ -0,0 +1,22 @@
+package br.dev.felipeschirmann.rinha.config;
+
+import br.dev.felipeschirmann.rinha.routing.RoutingStrategies;
+import br.dev.felipeschirmann.rinha.routing.RoutingStrategy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.DoubleSupplier;
+
+@Configuration
+public class RoutingConfig {
+
+    @Bean
+    public RoutingStrategy routingStrategy(RinhaProperties rinhaProperties, MeterRegistry meterRegistry) {
+        RoutingStrategy strategy = RoutingStrategies.create(rinhaProperties.routing().strategy(), rinhaProperties);
+        strategy.gauges().forEach((name, value) ->
+                Gauge.builder("rinha.routing." + name, value, DoubleSupplier::getAsDouble).tag("strategy", strategy.name()).register(meterRegistry));
+        return strategy;
+    }
+}
\ No newline at end of file
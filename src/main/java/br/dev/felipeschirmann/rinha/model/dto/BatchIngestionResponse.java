@@ -0,0 +1,14 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+import java.util.List;
+
+/**
+ * Resposta de POST /payments/batch. results tem um status por registro, na ordem do corpo:
+ * "accepted" (enfileirado), "invalid" (não passou na validação) ou "failed" (o Redis recusou o lote).
+ */
+public record BatchIngestionResponse(int accepted, int rejected, List<String> results) {
+
+    public static final String ACCEPTED = "accepted";
+    public static final String INVALID = "invalid";
+    public static final String FAILED = "failed";
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+
+public record BreakerEventMessage(
+        ProcessorType type,
+        Event event,
+        long openUntilEpochMs,
+        String instanceId
+) {
+    public enum Event {OPEN, CLOSE}
+}
\ No newline at end of file
@@ -0,0 +1,24 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+/**
+ * Parâmetros ajustáveis de um circuit breaker. Em uma atualização, campos nulos mantêm o valor atual.
+ */
+public record BreakerTuning(
+        Float failureRateThreshold,
+        Integer slidingWindowSize,
+        Integer minimumNumberOfCalls,
+        Long waitDurationInOpenStateMs,
+        Integer permittedNumberOfCallsInHalfOpenState
+) {
+    public BreakerTuning merge(BreakerTuning update) {
+        if (update == null) {
+            return this;
+        }
+        return new BreakerTuning(
+                update.failureRateThreshold != null ? update.failureRateThreshold : failureRateThreshold,
+                update.slidingWindowSize != null ? update.slidingWindowSize : slidingWindowSize,
+                update.minimumNumberOfCalls != null ? update.minimumNumberOfCalls : minimumNumberOfCalls,
+                update.waitDurationInOpenStateMs != null ? update.waitDurationInOpenStateMs : waitDurationInOpenStateMs,
+                update.permittedNumberOfCallsInHalfOpenState != null ? update.permittedNumberOfCallsInHalfOpenState : permittedNumberOfCallsInHalfOpenState);
+    }
+}
\ No newline at end of file
@@ -4,9 +4,10 @@ import java.time.Instant;
 
 public record HealthState(
         int consecutiveFailures,
-        Instant lastCheckedAt
+        Instant lastCheckedAt,
+        int minResponseTime
 ) {
     public HealthState() {
-        this(0, Instant.now());
+        this(0, Instant.now(), 0);
     }
 }
\ No newline at end of file
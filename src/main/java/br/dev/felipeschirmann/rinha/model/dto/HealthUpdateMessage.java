@@ -0,0 +1,9 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+
+// Mensagem publicada pelo líder do health check para todas as instâncias
+public record HealthUpdateMessage(
+        ProcessorType type,
+        HealthState state
+) {}
\ No newline at end of file
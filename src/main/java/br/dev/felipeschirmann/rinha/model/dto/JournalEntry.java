@@ -0,0 +1,21 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+// Registro lido do journal local. 'type' só é preenchido para pagamentos liquidados.
+public record JournalEntry(
+        Kind kind,
+        ProcessorType type,
+        UUID correlationId,
+        BigDecimal amount,
+        Instant timestamp
+) {
+    public enum Kind {
+        ACCEPTED,
+        SETTLED
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+import java.time.Instant;
+
+/**
+ * Uma versão da configuração de tuning: o que ficou valendo, o que foi pedido e quem pediu.
+ * A versão atual fica em tuning:current; todas vão para o histórico tuning:audit.
+ */
+public record TuningRecord(
+        long version,
+        Instant appliedAt,
+        String instanceId,
+        String reason,
+        TuningValues values,
+        TuningValues changes
+) {
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package br.dev.felipeschirmann.rinha.model.dto;
+
+/**
+ * Parâmetros de roteamento e de circuit breaker ajustáveis em tempo de execução (POST /admin/tuning).
+ * Numa atualização, só os campos presentes mudam; nos valores aplicados, todos estão preenchidos.
+ */
+public record TuningValues(
+        Integer fallbackTriggerSize,
+        Integer failureThreshold,
+        Long healthDataMaxAgeMs,
+        Integer strategyDecisionPeriodMs,
+        Long targetDrainMs,
+        BreakerTuning defaultBreaker,
+        BreakerTuning fallbackBreaker
+) {
+    public TuningValues merge(TuningValues update) {
+        return new TuningValues(
+                update.fallbackTriggerSize != null ? update.fallbackTriggerSize : fallbackTriggerSize,
+                update.failureThreshold != null ? update.failureThreshold : failureThreshold,
+                update.healthDataMaxAgeMs != null ? update.healthDataMaxAgeMs : healthDataMaxAgeMs,
+                update.strategyDecisionPeriodMs != null ? update.strategyDecisionPeriodMs : strategyDecisionPeriodMs,
+                update.targetDrainMs != null ? update.targetDrainMs : targetDrainMs,
+                defaultBreaker.merge(update.defaultBreaker),
+                fallbackBreaker.merge(update.fallbackBreaker));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Estratégia original: prefere o DEFAULT enquanto ele estiver confiável pelo health check e
+ * desvia para o FALLBACK quando a fila passa de rinha.queue.fallback-trigger-size.
+ */
+public class AdaptiveRoutingStrategy implements RoutingStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveRoutingStrategy.class);
+    private static final Logger paymentTraceLogger = LoggerFactory.getLogger("PaymentTrace");
+
+    // Ajustáveis em tempo de execução (retune)
+    protected volatile int failureThreshold;
+    private volatile long healthDataMaxAgeMs;
+    private volatile int fallbackTriggerSize;
+
+    private volatile ProcessorType preferredProcessor = ProcessorType.DEFAULT;
+
+    public AdaptiveRoutingStrategy(RinhaProperties rinhaProperties) {
+        this.failureThreshold = rinhaProperties.processor().failureThreshold();
+        this.healthDataMaxAgeMs = rinhaProperties.processor().healthDataMaxAgeMs();
+        this.fallbackTriggerSize = rinhaProperties.queue().fallbackTriggerSize();
+    }
+
+    @Override
+    public String name() {
+        return "adaptive";
+    }
+
+    @Override
+    public void refresh(RoutingSignals signals) {
+        ProcessorType currentPreference = this.preferredProcessor;
+
+        // Um processador só é considerado "confiável" se não tiver falhas E se sua informação for recente
+        boolean isDefaultReliable = isReliable(signals.defaultHealth(), signals);
+        boolean isFallbackReliable = isReliable(signals.fallbackHealth(), signals);
+
+        if (isDefaultReliable) {
+            // Regra #1: Se o default é confiável, ele é o preferido.
+            this.preferredProcessor = ProcessorType.DEFAULT;
+            if (currentPreference != ProcessorType.DEFAULT) {
+                logger.warn("ESTRATÉGIA: Processador DEFAULT confiável. Roteando preferencialmente para DEFAULT.");
+            }
+        } else if (isFallbackReliable) {
+            // Regra #2: Se o default não é confiável, mas o fallback é, usamos o fallback.
+            this.preferredProcessor = ProcessorType.FALLBACK;
+            if (currentPreference != ProcessorType.FALLBACK) {
+                logger.warn("ESTRATÉGIA: Processador DEFAULT não confiável. Roteando preferencialmente para FALLBACK.");
+            }
+        } else {
+            // Regra #3: Se nenhum é confiável, mantemos a esperança no default e deixamos o Circuit Breaker agir.
+            this.preferredProcessor = ProcessorType.DEFAULT;
+            if (currentPreference != ProcessorType.DEFAULT) {
+                logger.error("ESTRATÉGIA: NENHUM processador confiável. Mantendo preferência no DEFAULT.");
+            }
+        }
+    }
+
+    @Override
+    public void retune(TuningValues values) {
+        this.failureThreshold = values.failureThreshold();
+        this.healthDataMaxAgeMs = values.healthDataMaxAgeMs();
+        this.fallbackTriggerSize = values.fallbackTriggerSize();
+    }
+
+    @Override
+    public ProcessorType route(RoutingSignals signals) {
+        ProcessorType type = this.preferredProcessor;
+        if (type == ProcessorType.DEFAULT && signals.queueSize() > fallbackTriggerSize
+                && signals.fallbackHealth().consecutiveFailures() < failureThreshold) {
+            paymentTraceLogger.debug("ROTA: DEFAULT sobrecarregado (fila {}). Usando FALLBACK.", signals.queueSize());
+            return ProcessorType.FALLBACK;
+        }
+        return type;
+    }
+
+    protected ProcessorType preferredProcessor() {
+        return preferredProcessor;
+    }
+
+    private boolean isReliable(HealthState state, RoutingSignals signals) {
+        long age = Duration.between(state.lastCheckedAt(), signals.now()).toMillis();
+        return state.consecutiveFailures() < failureThreshold && age < healthDataMaxAgeMs;
+    }
+}
\ No newline at end of file
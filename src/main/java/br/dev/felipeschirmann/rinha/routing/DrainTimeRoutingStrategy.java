@@ -0,0 +1,213 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Desvio para o FALLBACK pelo tempo estimado para esvaziar a fila, em vez de um tamanho fixo de fila.
+ *
+ * A cada refresh, mede (médias móveis exponenciais) a vazão de retirada da fila, a taxa de chegada
+ * (retiradas + crescimento da fila) e os sucessos por processador. A capacidade do DEFAULT é a vazão de
+ * sucessos dele dividida pela fração do tráfego que recebeu. Se a fila não esvazia em targetDrainMs com essa
+ * capacidade, desvia a fração que falta para atingir a vazão necessária (chegadas + fila / alvo).
+ * O critério depende das taxas. Com taxas iguais (ou FALLBACK mais barato) o desvio é de graça: o alvo é targetDrainMs
+ * para o dreno de toda a fila. Se o FALLBACK cobra mais, cada desvio custa dinheiro e só vale quando um pagamento
+ * que entra agora esperaria mais que drainDeadlineMs (fila / capacidade do DEFAULT); uma rajada que o DEFAULT
+ * absorve dentro do prazo não desvia nada, mesmo com as chegadas momentaneamente acima da capacidade.
+ * As vazões são medidas só nesta instância, mas a fila informada é a do cluster: cada instância considera
+ * apenas a sua parte dela (fila / rinha.instance.count), já que as demais drenam o resto em paralelo.
+ *
+ * O desvio é aplicado por um acumulador de créditos: cada pagamento soma a fração e, ao completar um crédito,
+ * vai para o FALLBACK. Com fração 0,25, exatamente um a cada quatro é desviado, sem sorteio.
+ * A escolha do processador preferido (health check) é a mesma da {@link AdaptiveRoutingStrategy}.
+ */
+public class DrainTimeRoutingStrategy extends AdaptiveRoutingStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(DrainTimeRoutingStrategy.class);
+    private static final Logger paymentTraceLogger = LoggerFactory.getLogger("PaymentTrace");
+    // Crédito em milionésimos de pagamento
+    private static final long CREDIT_UNIT = 1_000_000;
+    // Estimativa usada quando o DEFAULT não dá conta nem das chegadas
+    private static final double MAX_DRAIN_MS = 3_600_000;
+    // Abaixo disso a fração medida do DEFAULT é ruído e não serve para extrapolar a capacidade
+    private static final double MIN_SHARE = 0.05;
+
+    private volatile long targetDrainMs;
+    private final double alpha;
+    private final double maxSpillFraction;
+    private final int instanceCount;
+    private final long drainDeadlineMs;
+    private final boolean fallbackCostsMore;
+
+    // Contadores entre dois refreshes
+    private final LongAdder dequeued = new LongAdder();
+    private final Map<ProcessorType, LongAdder> routed = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, LongAdder> successes = new EnumMap<>(ProcessorType.class);
+    private final AtomicLong credit = new AtomicLong();
+
+    // Estado do controlador: escrito só pelo refresh, lido pelo route e pelos gauges
+    private long lastRefreshMs = -1;
+    private long lastQueueSize;
+    private volatile double dequeueRate;
+    private volatile double arrivalRate;
+    private final Map<ProcessorType, Double> routedRate = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, Double> successRate = new EnumMap<>(ProcessorType.class);
+    private volatile double defaultCapacity;
+    private volatile double estimatedDrainMs;
+    private volatile double projectedWaitMs;
+    private volatile double spillFraction;
+    private volatile long spillCredit;
+
+    public DrainTimeRoutingStrategy(RinhaProperties rinhaProperties) {
+        super(rinhaProperties);
+        RinhaProperties.Routing routing = rinhaProperties.routing();
+        this.targetDrainMs = routing.targetDrainMs();
+        this.alpha = routing.ewmaAlpha();
+        this.maxSpillFraction = routing.maxSpillFraction();
+        this.instanceCount = rinhaProperties.instance().count();
+        this.drainDeadlineMs = routing.drainDeadlineMs();
+        this.fallbackCostsMore = routing.fallbackFee() > routing.defaultFee();
+        for (ProcessorType type : ProcessorType.values()) {
+            routed.put(type, new LongAdder());
+            successes.put(type, new LongAdder());
+            routedRate.put(type, 0.0);
+            successRate.put(type, 0.0);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "drain-time";
+    }
+
+    @Override
+    public void refresh(RoutingSignals signals) {
+        super.refresh(signals);
+        long nowMs = signals.now().toEpochMilli();
+        // Parte da fila do cluster que cabe a esta instância, na mesma escala das vazões locais
+        long queueSize = (signals.queueSize() + instanceCount - 1) / instanceCount;
+        if (lastRefreshMs < 0 || nowMs <= lastRefreshMs) {
+            lastRefreshMs = nowMs;
+            lastQueueSize = queueSize;
+            return;
+        }
+        double seconds = (nowMs - lastRefreshMs) / 1000.0;
+        double dequeuedPerSec = dequeued.sumThenReset() / seconds;
+        // Chegadas = o que foi retirado + o quanto a fila cresceu (reenfileiramentos entram como chegadas)
+        double arrivalsPerSec = Math.max(0, dequeuedPerSec + (queueSize - lastQueueSize) / seconds);
+        lastRefreshMs = nowMs;
+        lastQueueSize = queueSize;
+
+        dequeueRate = ewma(dequeueRate, dequeuedPerSec);
+        arrivalRate = ewma(arrivalRate, arrivalsPerSec);
+        for (ProcessorType type : ProcessorType.values()) {
+            routedRate.put(type, ewma(routedRate.get(type), routed.get(type).sumThenReset() / seconds));
+            successRate.put(type, ewma(successRate.get(type), successes.get(type).sumThenReset() / seconds));
+        }
+
+        // Capacidade do DEFAULT se recebesse todo o tráfego retirado da fila
+        double defaultShare = dequeueRate > 0 ? routedRate.get(ProcessorType.DEFAULT) / dequeueRate : 0;
+        double defaultSuccess = successRate.get(ProcessorType.DEFAULT);
+        defaultCapacity = defaultShare >= MIN_SHARE ? defaultSuccess / Math.min(1.0, defaultShare) : defaultSuccess;
+
+        double netDrainRate = defaultCapacity - arrivalRate;
+        if (queueSize == 0) {
+            estimatedDrainMs = 0;
+        } else if (netDrainRate <= 0) {
+            estimatedDrainMs = MAX_DRAIN_MS;
+        } else {
+            estimatedDrainMs = Math.min(MAX_DRAIN_MS, queueSize * 1000.0 / netDrainRate);
+        }
+
+        // Espera de quem entra agora na fila, só com o DEFAULT atendendo
+        projectedWaitMs = queueSize == 0 ? 0
+                : defaultCapacity <= 0 ? MAX_DRAIN_MS : Math.min(MAX_DRAIN_MS, queueSize * 1000.0 / defaultCapacity);
+
+        long spillTargetMs = spillTargetMs();
+        double previous = spillFraction;
+        double next = 0;
+        if ((fallbackCostsMore ? projectedWaitMs : estimatedDrainMs) > spillTargetMs) {
+            // Vazão necessária para zerar a fila no alvo; o que a capacidade do DEFAULT não cobre vai para o FALLBACK
+            double required = arrivalRate + queueSize * 1000.0 / spillTargetMs;
+            next = Math.min(maxSpillFraction, Math.max(0, 1 - defaultCapacity / required));
+        }
+        spillFraction = next;
+        spillCredit = Math.round(next * CREDIT_UNIT);
+
+        if (previous == 0 && next > 0) {
+            logger.warn("ESTRATÉGIA: fila de {} esvazia em ~{} ms, espera de ~{} ms (alvo {} ms). Desviando {}% para FALLBACK.",
+                    queueSize, Math.round(estimatedDrainMs), Math.round(projectedWaitMs), spillTargetMs, Math.round(next * 100));
+        } else if (previous > 0 && next == 0) {
+            logger.warn("ESTRATÉGIA: DEFAULT cumpre o alvo de {} ms sozinho. Fim do desvio para FALLBACK.", spillTargetMs);
+        }
+    }
+
+    // Com o FALLBACK mais caro, o alvo é o prazo; nunca menor que o alvo de latência
+    private long spillTargetMs() {
+        return fallbackCostsMore ? Math.max(targetDrainMs, drainDeadlineMs) : targetDrainMs;
+    }
+
+    @Override
+    public ProcessorType route(RoutingSignals signals) {
+        dequeued.increment();
+        ProcessorType type = preferredProcessor();
+        long increment = spillCredit;
+        if (type == ProcessorType.DEFAULT && increment > 0 && fallbackUsable(signals)) {
+            // Corridas entre threads só adiam ou antecipam um desvio; o crédito total é preservado
+            if (credit.addAndGet(increment) >= CREDIT_UNIT) {
+                credit.addAndGet(-CREDIT_UNIT);
+                paymentTraceLogger.debug("ROTA: desvio de {}% (dreno estimado {} ms). Usando FALLBACK.",
+                        Math.round(spillFraction * 100), Math.round(estimatedDrainMs));
+                type = ProcessorType.FALLBACK;
+            }
+        }
+        routed.get(type).increment();
+        return type;
+    }
+
+    @Override
+    public void retune(TuningValues values) {
+        super.retune(values);
+        this.targetDrainMs = values.targetDrainMs();
+    }
+
+    @Override
+    public void recordOutcome(ProcessorType type, boolean success) {
+        if (success) {
+            successes.get(type).increment();
+        }
+    }
+
+    @Override
+    public Map<String, DoubleSupplier> gauges() {
+        Map<String, DoubleSupplier> gauges = new LinkedHashMap<>();
+        gauges.put("drain.target.ms", this::spillTargetMs);
+        gauges.put("drain.estimate.ms", () -> estimatedDrainMs);
+        gauges.put("wait.estimate.ms", () -> projectedWaitMs);
+        gauges.put("spill.fraction", () -> spillFraction);
+        gauges.put("dequeue.rate", () -> dequeueRate);
+        gauges.put("arrival.rate", () -> arrivalRate);
+        gauges.put("default.capacity", () -> defaultCapacity);
+        gauges.put("success.rate.default", () -> successRate.get(ProcessorType.DEFAULT));
+        gauges.put("success.rate.fallback", () -> successRate.get(ProcessorType.FALLBACK));
+        return gauges;
+    }
+
+    private boolean fallbackUsable(RoutingSignals signals) {
+        return !signals.fallbackBreakerOpen() && signals.fallbackHealth().consecutiveFailures() < failureThreshold;
+    }
+
+    private double ewma(double current, double sample) {
+        return current == 0 ? sample : alpha * sample + (1 - alpha) * current;
+    }
+}
\ No newline at end of file
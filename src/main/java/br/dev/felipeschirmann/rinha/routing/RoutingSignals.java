@@ -0,0 +1,27 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+
+import java.time.Instant;
+
+/**
+ * Tudo o que uma estratégia de roteamento pode observar num instante.
+ * O relógio vem junto para que a mesma estratégia rode no tempo real e no simulador.
+ */
+public record RoutingSignals(
+        Instant now,
+        long queueSize,
+        HealthState defaultHealth,
+        HealthState fallbackHealth,
+        boolean defaultBreakerOpen,
+        boolean fallbackBreakerOpen
+) {
+    public HealthState health(ProcessorType type) {
+        return type == ProcessorType.DEFAULT ? defaultHealth : fallbackHealth;
+    }
+
+    public boolean breakerOpen(ProcessorType type) {
+        return type == ProcessorType.DEFAULT ? defaultBreakerOpen : fallbackBreakerOpen;
+    }
+}
@@ -0,0 +1,38 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Estratégias disponíveis por nome: a aplicação escolhe uma por rinha.routing.strategy
+ * e o RoutingSimulator (src/test, via simulate.sh) compara todas.
+ */
+public final class RoutingStrategies {
+
+    private static final Map<String, Function<RinhaProperties, RoutingStrategy>> FACTORIES = new LinkedHashMap<>();
+
+    static {
+        FACTORIES.put("adaptive", AdaptiveRoutingStrategy::new);
+        FACTORIES.put("drain-time", DrainTimeRoutingStrategy::new);
+    }
+
+    private RoutingStrategies() {
+    }
+
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(FACTORIES.keySet());
+    }
+
+    public static RoutingStrategy create(String name, RinhaProperties rinhaProperties) {
+        Function<RinhaProperties, RoutingStrategy> factory = FACTORIES.get(name.trim());
+        if (factory == null) {
+            throw new IllegalArgumentException("Estratégia desconhecida: " + name + " (disponíveis: " + FACTORIES.keySet() + ")");
+        }
+        return factory.apply(rinhaProperties);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
+
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decide para qual processador cada pagamento vai.
+ * As implementações não acessam Redis nem relógio diretamente: recebem tudo em {@link RoutingSignals},
+ * o que permite reproduzi-las no RoutingSimulator (src/test).
+ */
+public interface RoutingStrategy {
+
+    String name();
+
+    /**
+     * Reavaliação periódica (rinha.scheduler.strategy-decision-period-ms).
+     */
+    void refresh(RoutingSignals signals);
+
+    /**
+     * Escolhe o processador de um pagamento. Chamado por pagamento, deve ser barato.
+     */
+    ProcessorType route(RoutingSignals signals);
+
+    /**
+     * Resultado de uma chamada ao processador (sucesso ou falha), para estratégias que medem vazão.
+     */
+    default void recordOutcome(ProcessorType type, boolean success) {
+    }
+
+    /**
+     * Novos parâmetros vindos do ajuste em tempo de execução (POST /admin/tuning).
+     */
+    default void retune(TuningValues values) {
+    }
+
+    /**
+     * Valores internos expostos como gauges rinha.routing.{nome}.
+     */
+    default Map<String, DoubleSupplier> gauges() {
+        return Map.of();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Calcula, por processador, o prazo máximo de resposta de cada POST /payments.
+ * O prazo parte do maior valor entre o minResponseTime anunciado no health check e o
+ * percentil observado das últimas chamadas, multiplicado por uma folga e limitado a [min, max].
+ */
+@Service
+public class AdaptiveTimeoutService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveTimeoutService.class);
+    // Peso de um timeout na janela, em múltiplos do prazo que estourou
+    private static final int TIMEOUT_SAMPLE_FACTOR = 2;
+
+    private final RinhaProperties.Deadline props;
+    private final SharedHealthStateService healthStateService;
+    private final Map<ProcessorType, LatencyWindow> windows = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, Counter> timeoutCounters = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, Counter> requestCounters = new EnumMap<>(ProcessorType.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final MeterRegistry meterRegistry;
+
+    public AdaptiveTimeoutService(RinhaProperties rinhaProperties,
+                                  SharedHealthStateService healthStateService,
+                                  MeterRegistry meterRegistry) {
+        this.props = rinhaProperties.deadline();
+        this.healthStateService = healthStateService;
+        this.meterRegistry = meterRegistry;
+        for (ProcessorType type : ProcessorType.values()) {
+            windows.put(type, new LatencyWindow(props.sampleSize(), props.maxMs()));
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        for (ProcessorType type : ProcessorType.values()) {
+            String tag = type.name().toLowerCase();
+            LatencyWindow window = windows.get(type);
+            timeoutCounters.put(type, Counter.builder("rinha.processor.timeouts")
+                    .description("Chamadas de pagamento que estouraram o prazo de resposta")
+                    .tag("processor", tag).register(meterRegistry));
+            requestCounters.put(type, Counter.builder("rinha.processor.requests")
+                    .description("Chamadas de pagamento enviadas ao processador")
+                    .tag("processor", tag).register(meterRegistry));
+            Gauge.builder("rinha.processor.deadline.ms", window, w -> w.deadlineMs)
+                    .description("Prazo de resposta aplicado atualmente")
+                    .tag("processor", tag).register(meterRegistry);
+            Gauge.builder("rinha.processor.latency.percentile.ms", window, w -> w.percentileMs)
+                    .description("Percentil de latência observado na janela recente")
+                    .tag("processor", tag).register(meterRegistry);
+        }
+        if (props.adaptive()) {
+            logger.info("Timeouts adaptativos ligados: p{} x {} limitado a [{}, {}] ms.",
+                    Math.round(props.percentile() * 100), props.multiplier(), props.minMs(), props.maxMs());
+            scheduler.scheduleAtFixedRate(this::recompute, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    public void recordLatency(ProcessorType type, long millis) {
+        requestCounters.get(type).increment();
+        windows.get(type).record(millis);
+    }
+
+    public void recordTimeout(ProcessorType type) {
+        requestCounters.get(type).increment();
+        timeoutCounters.get(type).increment();
+        // Um timeout conta como o dobro do prazo que estourou: o prazo cresce enquanto o processador estiver lento,
+        // mas sem saltar para o teto e ficar preso lá por uma janela inteira depois que ele se recuperar
+        LatencyWindow window = windows.get(type);
+        window.record(Math.min(props.maxMs(), window.deadlineMs * TIMEOUT_SAMPLE_FACTOR));
+    }
+
+    public long responseTimeoutMs(ProcessorType type) {
+        return windows.get(type).deadlineMs;
+    }
+
+    private void recompute() {
+        try {
+            for (ProcessorType type : ProcessorType.values()) {
+                LatencyWindow window = windows.get(type);
+                long observed = window.percentile(props.percentile());
+                long advertised = healthStateService.getState(type).minResponseTime();
+                long base = Math.max(observed, advertised);
+                long deadline = base <= 0 ? props.maxMs() : (long) Math.ceil(base * props.multiplier());
+                window.percentileMs = observed;
+                window.deadlineMs = Math.max(props.minMs(), Math.min(props.maxMs(), deadline));
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao recalcular os timeouts adaptativos", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    // Janela circular das últimas latências, escrita sem lock
+    private static final class LatencyWindow {
+        private final AtomicLongArray samples;
+        private final AtomicLong next = new AtomicLong();
+        volatile long deadlineMs;
+        volatile long percentileMs;
+
+        LatencyWindow(int size, long initialDeadlineMs) {
+            this.samples = new AtomicLongArray(Math.max(16, size));
+            this.deadlineMs = initialDeadlineMs;
+        }
+
+        void record(long millis) {
+            samples.set((int) (next.getAndIncrement() % samples.length()), millis);
+        }
+
+        long percentile(double percentile) {
+            int count = (int) Math.min(next.get(), samples.length());
+            if (count == 0) {
+                return 0;
+            }
+            long[] copy = new long[count];
+            for (int i = 0; i < count; i++) {
+                copy[i] = samples.get(i);
+            }
+            Arrays.sort(copy);
+            return copy[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+}
\ No newline at end of file
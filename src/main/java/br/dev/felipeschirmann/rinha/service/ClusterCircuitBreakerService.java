@@ -0,0 +1,308 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.ProcessorBreakers;
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.BreakerEventMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Coordena os circuit breakers locais (resilience4j) de todas as instâncias pelo Redis.
+ *
+ * - Resultados: cada instância soma sucessos e falhas localmente e, a cada flushPeriodMs, grava os
+ *   contadores num hash por segundo (breaker:{processador}:{segundo}) e lê a janela inteira no mesmo pipeline.
+ *   Se a taxa de falha agregada passar do limite, o circuito abre no cluster todo.
+ * - Abertura: quem detecta grava breaker:{processador}:open com TTL e publica OPEN; todas as instâncias
+ *   forçam o breaker local para FORCED_OPEN, sem precisar descobrir a queda por conta própria.
+ * - Recuperação: ao fim do TTL, as instâncias disputam breaker:{processador}:probe com SET NX. Só a vencedora
+ *   passa para HALF_OPEN e faz as chamadas de teste; o resultado (CLOSE ou novo OPEN) é publicado para todas.
+ *   O CLOSE apaga os buckets da janela e cada instância passa a somar só os segundos posteriores ao fechamento:
+ *   as falhas que abriram o circuito não podem reabri-lo logo depois de um teste bem-sucedido.
+ */
+@Service
+public class ClusterCircuitBreakerService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterCircuitBreakerService.class);
+    private static final String EVENTS_CHANNEL = "breaker:events";
+    private static final byte[] OK_FIELD = "ok".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAIL_FIELD = "fail".getBytes(StandardCharsets.UTF_8);
+
+    private final RinhaProperties.ClusterBreaker props;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final String instanceId;
+    private final ProcessorBreakers breakers;
+    private final Map<ProcessorType, AtomicLong> pendingSuccesses = new EnumMap<>(ProcessorType.class);
+    private final Map<ProcessorType, AtomicLong> pendingFailures = new EnumMap<>(ProcessorType.class);
+    // Segundo do último fechamento no cluster; buckets até ele ficam fora da janela
+    private final Map<ProcessorType, AtomicLong> closedAtSecond = new EnumMap<>(ProcessorType.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Marca transições feitas por este serviço, para que o listener de estado não as republique
+    private final ThreadLocal<Boolean> applyingClusterState = ThreadLocal.withInitial(() -> false);
+
+    public ClusterCircuitBreakerService(RinhaProperties rinhaProperties,
+                                        RedisTemplate<String, String> redisTemplate,
+                                        RedisMessageListenerContainer listenerContainer,
+                                        ObjectMapper objectMapper,
+                                        MeterRegistry meterRegistry,
+                                        ProcessorBreakers processorBreakers) {
+        this.props = rinhaProperties.clusterBreaker();
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.instanceId = rinhaProperties.instance().id();
+        this.breakers = processorBreakers;
+        for (ProcessorType type : ProcessorType.values()) {
+            pendingSuccesses.put(type, new AtomicLong());
+            pendingFailures.put(type, new AtomicLong());
+            closedAtSecond.put(type, new AtomicLong(Long.MIN_VALUE));
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!props.enabled()) {
+            return;
+        }
+        for (ProcessorType type : ProcessorType.values()) {
+            subscribe(type, breakers.get(type));
+        }
+        // O tuning em tempo de execução troca o breaker: os eventos precisam ser assinados de novo
+        breakers.onReplaced(this::subscribe);
+        listenerContainer.addMessageListener(this, new ChannelTopic(EVENTS_CHANNEL));
+
+        // Uma instância que sobe com o circuito já aberto no cluster entra direto em FORCED_OPEN
+        for (ProcessorType type : ProcessorType.values()) {
+            Long ttl = redisTemplate.getExpire(openKey(type), TimeUnit.MILLISECONDS);
+            if (ttl != null && ttl > 0) {
+                applyOpen(type, System.currentTimeMillis() + ttl);
+            }
+        }
+        scheduler.scheduleAtFixedRate(this::flushAndEvaluate, props.flushPeriodMs(), props.flushPeriodMs(), TimeUnit.MILLISECONDS);
+        logger.info("Circuit breaker de cluster ligado: janela de {} s, abre com {}% de falhas em no mínimo {} chamadas.",
+                props.windowSec(), Math.round(props.failureRateThreshold() * 100), props.minimumCalls());
+    }
+
+    private void subscribe(ProcessorType type, CircuitBreaker breaker) {
+        breaker.getEventPublisher().onSuccess(event -> pendingSuccesses.get(type).incrementAndGet());
+        breaker.getEventPublisher().onError(event -> pendingFailures.get(type).incrementAndGet());
+        breaker.getEventPublisher().onStateTransition(event -> {
+            if (applyingClusterState.get()) {
+                return;
+            }
+            switch (event.getStateTransition().getToState()) {
+                case OPEN -> announceOpen(type, "breaker local abriu");
+                case CLOSED -> announceClose(type);
+                default -> {
+                }
+            }
+        });
+    }
+
+    // Grava os contadores locais e lê a janela agregada de todas as instâncias num único round trip
+    private void flushAndEvaluate() {
+        try {
+            long second = System.currentTimeMillis() / 1000;
+            long expireSec = props.windowSec() + 2;
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ProcessorType type : ProcessorType.values()) {
+                    long ok = pendingSuccesses.get(type).getAndSet(0);
+                    long fail = pendingFailures.get(type).getAndSet(0);
+                    byte[] bucket = bucketKey(type, second).getBytes(StandardCharsets.UTF_8);
+                    if (ok > 0 || fail > 0) {
+                        connection.hashCommands().hIncrBy(bucket, OK_FIELD, ok);
+                        connection.hashCommands().hIncrBy(bucket, FAIL_FIELD, fail);
+                        connection.keyCommands().expire(bucket, expireSec);
+                    }
+                }
+                for (ProcessorType type : ProcessorType.values()) {
+                    for (int i = 0; i < props.windowSec(); i++) {
+                        connection.hashCommands().hMGet(bucketKey(type, second - i).getBytes(StandardCharsets.UTF_8), OK_FIELD, FAIL_FIELD);
+                    }
+                }
+                return null;
+            });
+
+            // As leituras são as últimas entradas do pipeline, na ordem em que foram enfileiradas
+            int readsStart = results.size() - ProcessorType.values().length * props.windowSec();
+            for (ProcessorType type : ProcessorType.values()) {
+                long ok = 0;
+                long fail = 0;
+                long closedAt = closedAtSecond.get(type).get();
+                for (int i = 0; i < props.windowSec() && second - i > closedAt; i++) {
+                    Object read = results.get(readsStart + type.ordinal() * props.windowSec() + i);
+                    if (read instanceof List<?> values && values.size() == 2) {
+                        ok += parse(values.get(0));
+                        fail += parse(values.get(1));
+                    }
+                }
+                evaluate(type, ok, fail);
+            }
+        } catch (Exception e) {
+            logger.warn("Falha ao sincronizar o circuit breaker de cluster", e);
+        }
+    }
+
+    private void evaluate(ProcessorType type, long ok, long fail) {
+        long total = ok + fail;
+        if (total < props.minimumCalls() || breakers.get(type).getState() != CircuitBreaker.State.CLOSED) {
+            return;
+        }
+        double failureRate = (double) fail / total;
+        if (failureRate >= props.failureRateThreshold()) {
+            announceOpen(type, String.format("%d%% de falhas em %d chamadas no cluster", Math.round(failureRate * 100), total));
+        }
+    }
+
+    private void announceOpen(ProcessorType type, String reason) {
+        try {
+            long openUntil = System.currentTimeMillis() + props.openMs();
+            redisTemplate.opsForValue().set(openKey(type), instanceId, Duration.ofMillis(props.openMs()));
+            redisTemplate.delete(probeKey(type));
+            publish(new BreakerEventMessage(type, BreakerEventMessage.Event.OPEN, openUntil, instanceId));
+            logger.warn("BREAKER CLUSTER: {} aberto para todas as instâncias por {} ms ({}).", type, props.openMs(), reason);
+            applyOpen(type, openUntil);
+        } catch (Exception e) {
+            logger.error("Falha ao anunciar a abertura do breaker de {}", type, e);
+        }
+    }
+
+    private void announceClose(ProcessorType type) {
+        try {
+            long second = markClosed(type);
+            List<String> keys = new ArrayList<>(List.of(openKey(type), probeKey(type)));
+            for (int i = 0; i < props.windowSec(); i++) {
+                keys.add(bucketKey(type, second - i));
+            }
+            redisTemplate.delete(keys);
+            publish(new BreakerEventMessage(type, BreakerEventMessage.Event.CLOSE, 0, instanceId));
+            logger.info("BREAKER CLUSTER: {} recuperado, fechando para todas as instâncias.", type);
+        } catch (Exception e) {
+            logger.error("Falha ao anunciar o fechamento do breaker de {}", type, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            BreakerEventMessage event = objectMapper.readValue(message.getBody(), BreakerEventMessage.class);
+            if (instanceId.equals(event.instanceId())) {
+                return; // Já aplicado localmente por quem anunciou
+            }
+            meterRegistry.counter("rinha.breaker.cluster.events",
+                    "processor", event.type().name().toLowerCase(), "event", event.event().name().toLowerCase()).increment();
+            if (event.event() == BreakerEventMessage.Event.OPEN) {
+                applyOpen(event.type(), event.openUntilEpochMs());
+            } else {
+                markClosed(event.type());
+                transition(event.type(), CircuitBreaker::transitionToClosedState);
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao processar evento do breaker de cluster", e);
+        }
+    }
+
+    // Descarta o que ainda não foi gravado e passa a ignorar os buckets até o segundo atual
+    private long markClosed(ProcessorType type) {
+        long second = System.currentTimeMillis() / 1000;
+        closedAtSecond.get(type).set(second);
+        pendingSuccesses.get(type).set(0);
+        pendingFailures.get(type).set(0);
+        return second;
+    }
+
+    private void applyOpen(ProcessorType type, long openUntilEpochMs) {
+        if (breakers.get(type).getState() != CircuitBreaker.State.FORCED_OPEN) {
+            transition(type, CircuitBreaker::transitionToForcedOpenState);
+        }
+        long delay = Math.max(0, openUntilEpochMs - System.currentTimeMillis());
+        scheduler.schedule(() -> tryProbe(type), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Fim da espera: só a instância que ganhar o lease de teste passa para HALF_OPEN
+    private void tryProbe(ProcessorType type) {
+        try {
+            if (breakers.get(type).getState() != CircuitBreaker.State.FORCED_OPEN) {
+                return; // Já fechado ou já em teste
+            }
+            Long remaining = redisTemplate.getExpire(openKey(type), TimeUnit.MILLISECONDS);
+            if (remaining != null && remaining > 0) {
+                scheduler.schedule(() -> tryProbe(type), remaining, TimeUnit.MILLISECONDS);
+                return; // Reaberto por outra instância enquanto esperávamos
+            }
+            Boolean won = redisTemplate.opsForValue().setIfAbsent(probeKey(type), instanceId, Duration.ofMillis(props.probeLeaseMs()));
+            if (Boolean.TRUE.equals(won)) {
+                logger.info("BREAKER CLUSTER: esta instância testa a recuperação do {}.", type);
+                transition(type, CircuitBreaker::transitionToHalfOpenState);
+            } else {
+                // Se quem testa sumir sem anunciar o resultado, o lease expira e tentamos de novo
+                scheduler.schedule(() -> tryProbe(type), props.probeLeaseMs(), TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            logger.warn("Falha ao disputar o teste de recuperação do {}", type, e);
+            scheduler.schedule(() -> tryProbe(type), props.probeLeaseMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void transition(ProcessorType type, Consumer<CircuitBreaker> action) {
+        applyingClusterState.set(true);
+        try {
+            action.accept(breakers.get(type));
+        } finally {
+            applyingClusterState.set(false);
+        }
+    }
+
+    private void publish(BreakerEventMessage message) throws Exception {
+        redisTemplate.convertAndSend(EVENTS_CHANNEL, objectMapper.writeValueAsString(message));
+    }
+
+    private static long parse(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    private static String bucketKey(ProcessorType type, long second) {
+        return "breaker:" + type.name().toLowerCase() + ":" + second;
+    }
+
+    private static String openKey(ProcessorType type) {
+        return "breaker:" + type.name().toLowerCase() + ":open";
+    }
+
+    private static String probeKey(ProcessorType type) {
+        return "breaker:" + type.name().toLowerCase() + ":probe";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,170 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.ProcessorClients;
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthCheckResponse;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Health check com líder único eleito por lease no Redis.
+ * Só o líder consulta /payments/service-health (no limite de 1 chamada a cada 5s por processador)
+ * e publica o resultado para as demais instâncias. Os seguidores apenas escutam os heartbeats
+ * e só disputam o lease quando ele expira.
+ */
+@Service
+public class HealthCheckService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthCheckService.class);
+    private static final String LEADER_KEY = "health:leader";
+    private static final String HEARTBEAT_CHANNEL = "health:leader:heartbeat";
+
+    // Renova o lease somente se ele ainda pertencer a esta instância
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end",
+            Long.class);
+
+    // Lease e probes em threads separadas: um probe lento não pode atrasar a renovação e deixar dois líderes
+    private final ScheduledExecutorService leaseScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService probeScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final ProcessorClients processorClients;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final SharedHealthStateService healthStateService;
+    private final String instanceId;
+    private final long leaseMs;
+    private final long probePeriodMs;
+
+    private volatile boolean leader = false;
+    private volatile long lastLeaderSignalAt = 0;
+
+    public HealthCheckService(ProcessorClients processorClients,
+                              RedisTemplate<String, String> redisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              SharedHealthStateService healthStateService,
+                              RinhaProperties rinhaProperties) {
+        this.processorClients = processorClients;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.healthStateService = healthStateService;
+        this.instanceId = rinhaProperties.instance().id();
+        this.leaseMs = rinhaProperties.health().leaseMs();
+        this.probePeriodMs = rinhaProperties.health().probePeriodMs();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        logger.info("Iniciando health check com eleição de líder (instância {}, lease {} ms)...", instanceId, leaseMs);
+        MessageListener heartbeatListener = (message, pattern) -> {
+            if (!instanceId.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+                lastLeaderSignalAt = System.currentTimeMillis();
+            }
+        };
+        listenerContainer.addMessageListener(heartbeatListener, new ChannelTopic(HEARTBEAT_CHANNEL));
+
+        leaseScheduler.scheduleAtFixedRate(this::leaseTick, 0, Math.max(1, leaseMs / 3), TimeUnit.MILLISECONDS);
+        probeScheduler.scheduleAtFixedRate(() -> probe(ProcessorType.DEFAULT), 0, probePeriodMs, TimeUnit.MILLISECONDS);
+        probeScheduler.scheduleAtFixedRate(() -> probe(ProcessorType.FALLBACK), probePeriodMs / 2, probePeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    private void leaseTick() {
+        try {
+            if (leader) {
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(LEADER_KEY), instanceId, String.valueOf(leaseMs));
+                if (renewed == null || renewed == 0L) {
+                    leader = false;
+                    lastLeaderSignalAt = System.currentTimeMillis();
+                    logger.warn("Health Check: lease de líder perdido pela instância {}.", instanceId);
+                } else {
+                    redisTemplate.convertAndSend(HEARTBEAT_CHANNEL, instanceId);
+                }
+                return;
+            }
+
+            // Seguidores não emitem nenhum comando enquanto o líder estiver dando sinal de vida
+            if (System.currentTimeMillis() - lastLeaderSignalAt < leaseMs) {
+                return;
+            }
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LEADER_KEY, instanceId, Duration.ofMillis(leaseMs));
+            if (Boolean.TRUE.equals(acquired)) {
+                leader = true;
+                logger.info("Health Check: instância {} assumiu a liderança.", instanceId);
+                redisTemplate.convertAndSend(HEARTBEAT_CHANNEL, instanceId);
+            } else {
+                // Outro líder está ativo: aguardamos mais um lease antes de tentar de novo
+                lastLeaderSignalAt = System.currentTimeMillis();
+            }
+        } catch (Exception e) {
+            logger.error("Health Check: erro ao gerenciar o lease de liderança", e);
+        }
+    }
+
+    private void probe(ProcessorType type) {
+        if (!leader) {
+            return;
+        }
+        RestClient client = processorClients.client(type, ProcessorClients.TrafficClass.HEALTH);
+        HealthState currentState = healthStateService.getState(type);
+        try {
+            HealthCheckResponse health = client.get().uri("/payments/service-health").retrieve().body(HealthCheckResponse.class);
+            if (health != null && !health.failing()) {
+                healthStateService.updateState(type, new HealthState(0, Instant.now(), health.minResponseTime()));
+                if (currentState.consecutiveFailures() > 0) logger.info("Health Check: {} recuperado.", type);
+            } else {
+                int minResponseTime = health != null ? health.minResponseTime() : currentState.minResponseTime();
+                healthStateService.updateState(type, new HealthState(currentState.consecutiveFailures() + 1, Instant.now(), minResponseTime));
+                logger.warn("Health Check: {} COM FALHAS (falha consecutiva #{})", type, currentState.consecutiveFailures() + 1);
+            }
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            // Limite de chamadas do endpoint atingido: não é falha do processador, mantemos o estado atual
+            logger.debug("Health Check: limite de chamadas atingido para {}.", type);
+        } catch (Exception e) {
+            healthStateService.updateState(type, new HealthState(currentState.consecutiveFailures() + 1, Instant.now(), currentState.minResponseTime()));
+            logger.error("Health Check: Falha ao contatar o Processador {} (falha consecutiva #{})", type, currentState.consecutiveFailures() + 1);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        leaseScheduler.shutdown();
+        probeScheduler.shutdown();
+        if (leader) {
+            // Libera o lease para que outra instância assuma imediatamente
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, List.of(LEADER_KEY), instanceId);
+            } catch (Exception e) {
+                logger.warn("Health Check: não foi possível liberar o lease de liderança.", e);
+            }
+            leader = false;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.PaymentRequest;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.JournalEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reconstrói filas e sumário a partir dos journals quando o Redis perdeu os dados
+ * (o redis.conf roda com save "", então um restart do Redis zera tudo).
+ * A perda é detectada pelo {@link PaymentKeyspace}, tanto na subida quanto com a aplicação já rodando,
+ * e só a instância que a detectou primeiro faz o replay, de todas as fontes do diretório compartilhado.
+ *
+ * Qualquer instância pode liquidar um pagamento aceito por outra, então o estado de cada pagamento vem da
+ * união dos journals: liquidado em qualquer um deles prevalece. O replay espera replayDelayMs para os pagamentos
+ * em voo no momento da perda terminarem, e separa o que foi gravado antes e depois da perda: o que foi liquidado
+ * ou reenfileirado depois já está no Redis novo e não é reenfileirado de novo.
+ */
+@Component
+public class JournalRecoveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalRecoveryService.class);
+
+    private final PaymentJournal journal;
+    private final PaymentStorageService storageService;
+    private final PaymentSummaryService summaryService;
+    private final PaymentKeyspace keyspace;
+    private final long replayDelayMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public JournalRecoveryService(PaymentJournal journal,
+                                  PaymentStorageService storageService,
+                                  PaymentSummaryService summaryService,
+                                  PaymentKeyspace keyspace,
+                                  RinhaProperties rinhaProperties) {
+        this.journal = journal;
+        this.storageService = storageService;
+        this.summaryService = summaryService;
+        this.keyspace = keyspace;
+        this.replayDelayMs = rinhaProperties.journal().replayDelayMs();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (journal.isEnabled()) {
+            keyspace.onRedisReset(this::scheduleReplay);
+        }
+    }
+
+    private void scheduleReplay(long generation) {
+        // O que foi gravado até aqui é anterior à perda
+        Map<Path, Long> lostAt = journal.positions();
+        logger.warn("Journal: Redis sem estado. Replay na geração {} em {} ms.", generation, replayDelayMs);
+        scheduler.schedule(() -> replay(generation, lostAt), replayDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void replay(long generation, Map<Path, Long> lostAt) {
+        if (keyspace.epoch() != generation) {
+            logger.warn("Journal: replay da geração {} cancelado, houve purge durante a espera.", generation);
+            return;
+        }
+        long start = System.nanoTime();
+        List<JournalEntry> before = journal.read(Map.of(), lostAt);
+        List<JournalEntry> after = journal.read(lostAt, null);
+
+        // Liquidados em qualquer journal, antes ou depois da perda, não voltam para a fila
+        Set<UUID> settledIds = new HashSet<>();
+        // Aceitos de novo depois da perda (ex: devolvidos à fila por quem estava com eles em voo) já estão no Redis
+        Set<UUID> reaccepted = new HashSet<>();
+        for (JournalEntry entry : after) {
+            (entry.kind() == JournalEntry.Kind.SETTLED ? settledIds : reaccepted).add(entry.correlationId());
+        }
+        Map<UUID, JournalEntry> settled = new LinkedHashMap<>();
+        Map<UUID, JournalEntry> pending = new LinkedHashMap<>();
+        for (JournalEntry entry : before) {
+            if (entry.kind() == JournalEntry.Kind.SETTLED) {
+                settled.putIfAbsent(entry.correlationId(), entry);
+                settledIds.add(entry.correlationId());
+            } else {
+                pending.putIfAbsent(entry.correlationId(), entry);
+            }
+        }
+        pending.keySet().removeAll(settledIds);
+        pending.keySet().removeAll(reaccepted);
+
+        // Só o que foi liquidado antes da perda: o sumário do que veio depois já foi gravado no Redis novo
+        for (JournalEntry entry : settled.values()) {
+            if (entry.type() == ProcessorType.DEFAULT) {
+                summaryService.recordSuccessfulDefaultPayment(entry.amount(), entry.timestamp());
+            } else {
+                summaryService.recordSuccessfulFallbackPayment(entry.amount(), entry.timestamp());
+            }
+        }
+        summaryService.flush();
+        for (JournalEntry entry : pending.values()) {
+            storageService.recordPayment(new PaymentRequest(entry.correlationId(), entry.amount()));
+        }
+        logger.warn("Journal: replay de {} registros na geração {}: {} liquidados restaurados, {} reenfileirados em {} ms.",
+                before.size() + after.size(), generation, settled.size(), pending.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
\ No newline at end of file
@@ -1,31 +1,86 @@
 package br.dev.felipeschirmann.rinha.service;
 
 import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Acompanha a pressão sobre o heap pelas notificações de GC (taxa de alocação, tempo de pausa e
+ * ocupação da old gen após cada coleta) e freia os consumidores quando ela passa dos watermarks:
+ * NORMAL retira da fila sem espera, SLOW espera slowDelayMs a cada retirada e PAUSED para de retirar
+ * até a ocupação voltar a cair. Os pagamentos que não foram retirados continuam seguros no Redis.
+ */
 @Component
 public class MemoryMonitorService {
 
+    public enum Level {NORMAL, SLOW, PAUSED}
+
     private static final Logger logger = LoggerFactory.getLogger(MemoryMonitorService.class);
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     private static final long MEGABYTE = 1024L * 1024L;
+    private static final long EVALUATION_PERIOD_MS = 1000;
 
     private final RinhaProperties rinhaProperties;
+    private final RinhaProperties.MemoryMonitor props;
+    private final MeterRegistry meterRegistry;
     private long reportingThresholdMb;
     private long lastReportedThreshold = 0;
 
-    public MemoryMonitorService(RinhaProperties rinhaProperties) {
+    private final ReentrantLock levelLock = new ReentrantLock();
+    private final Condition resumed = levelLock.newCondition();
+    private volatile Level level = Level.NORMAL;
+    // Desligamento: o dreno precisa dos loops de consumo de volta na hora, seja qual for o nível
+    private volatile boolean released = false;
+    // Só uma coleta forçada por episódio de PAUSED: System.gc() é uma pausa completa
+    private volatile boolean gcRequestedWhilePaused = false;
+
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener gcListener = this::onGcNotification;
+    private MemoryPoolMXBean oldGenPool;
+
+    // Estado alimentado pelas notificações de GC
+    private final AtomicLong pauseMsInWindow = new AtomicLong();
+    private final AtomicLong gcCount = new AtomicLong();
+    private volatile long windowStartNanos = System.nanoTime();
+    private volatile long lastGcEndMs = -1;
+    private volatile long heapUsedAfterLastGc;
+    private volatile double oldGenOccupancy;
+    private volatile double allocationRateBytesPerSec;
+    private volatile double gcPauseRatio;
+    private long gcCountAtLastEvaluation;
+
+    public MemoryMonitorService(RinhaProperties rinhaProperties, MeterRegistry meterRegistry) {
         this.rinhaProperties = rinhaProperties;
+        this.props = rinhaProperties.memoryMonitor();
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
@@ -36,6 +91,226 @@ public class MemoryMonitorService {
 
         logger.info("Iniciando monitor de memória... Verificação a cada {} segundos.", period);
         scheduler.scheduleAtFixedRate(this::monitorMemory, initialDelay, period, TimeUnit.SECONDS);
+
+        this.oldGenPool = findOldGenPool();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(gcListener, null, null);
+                emitters.add(emitter);
+            }
+        }
+        scheduler.scheduleAtFixedRate(this::evaluate, EVALUATION_PERIOD_MS, EVALUATION_PERIOD_MS, TimeUnit.MILLISECONDS);
+        registerMetrics();
+
+        if (props.throttle()) {
+            logger.info("Freio por pressão de heap ligado (pool {}): SLOW a {}%, PAUSED a {}%, retomada abaixo de {}%, pausas de GC até {}% do tempo.",
+                    oldGenPool != null ? oldGenPool.getName() : "heap inteiro",
+                    Math.round(props.slowWatermark() * 100), Math.round(props.pauseWatermark() * 100),
+                    Math.round(props.resumeWatermark() * 100), Math.round(props.gcPauseBudget() * 100));
+        }
+    }
+
+    /**
+     * Chamado pelos loops de consumo antes de cada retirada da fila.
+     * Retorna imediatamente em NORMAL, espera um pouco em SLOW e bloqueia enquanto estiver em PAUSED.
+     * Depois de {@link #release()} retorna sempre na hora.
+     */
+    public void awaitCapacity() throws InterruptedException {
+        Level current = level;
+        if (current == Level.NORMAL || released) {
+            return;
+        }
+        if (current == Level.SLOW) {
+            Thread.sleep(props.slowDelayMs());
+            return;
+        }
+        levelLock.lock();
+        try {
+            while (level == Level.PAUSED && !released) {
+                resumed.await(EVALUATION_PERIOD_MS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            levelLock.unlock();
+        }
+    }
+
+    /**
+     * Chamado no início do dreno do desligamento: acorda quem está em PAUSED e desliga o freio dali em diante.
+     * O PaymentProcessorService é destruído antes deste bean, então não pode esperar o {@link #stopMonitor()}.
+     */
+    public void release() {
+        levelLock.lock();
+        try {
+            released = true;
+            resumed.signalAll();
+        } finally {
+            levelLock.unlock();
+        }
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    private void onGcNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        try {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            GcInfo gcInfo = info.getGcInfo();
+            gcCount.incrementAndGet();
+            // Ciclos concorrentes (G1 Concurrent GC, ZGC Cycles) não param a aplicação; só contam as pausas
+            if (!info.getGcName().contains("Concurrent") && !info.getGcName().contains("Cycles")) {
+                pauseMsInWindow.addAndGet(gcInfo.getDuration());
+            }
+
+            long usedBefore = heapUsed(gcInfo.getMemoryUsageBeforeGc());
+            long usedAfter = heapUsed(gcInfo.getMemoryUsageAfterGc());
+            // Tudo que apareceu no heap entre o fim da coleta anterior e o início desta foi alocado nesse intervalo
+            if (lastGcEndMs >= 0 && gcInfo.getStartTime() > lastGcEndMs) {
+                long allocated = Math.max(0, usedBefore - heapUsedAfterLastGc);
+                allocationRateBytesPerSec = allocated * 1000.0 / (gcInfo.getStartTime() - lastGcEndMs);
+            }
+            lastGcEndMs = gcInfo.getEndTime();
+            heapUsedAfterLastGc = usedAfter;
+
+            if (oldGenPool != null) {
+                MemoryUsage oldGen = gcInfo.getMemoryUsageAfterGc().get(oldGenPool.getName());
+                if (oldGen != null) {
+                    oldGenOccupancy = occupancy(oldGen);
+                }
+            } else {
+                oldGenOccupancy = occupancy(usedAfter, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage());
+            }
+            updateLevel();
+        } catch (Exception e) {
+            logger.error("Erro ao processar notificação de GC", e);
+        }
+    }
+
+    // Fecha a janela de pausas e reavalia o nível mesmo sem novas coletas
+    private void evaluate() {
+        try {
+            long now = System.nanoTime();
+            long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - windowStartNanos));
+            gcPauseRatio = Math.min(1.0, pauseMsInWindow.getAndSet(0) / (double) elapsedMs);
+            windowStartNanos = now;
+
+            long collections = gcCount.get();
+            if (collections == gcCountAtLastEvaluation) {
+                // Sem notificações (ex: imagem nativa), usa o uso medido pela própria JVM após a última coleta
+                MemoryUsage afterGc = oldGenPool != null ? oldGenPool.getCollectionUsage() : null;
+                if (afterGc != null && afterGc.getUsed() > 0) {
+                    oldGenOccupancy = occupancy(afterGc);
+                }
+                // Parados e sem alocação pode não haver GC para medir a queda: pede uma única coleta por episódio
+                if (level == Level.PAUSED && !gcRequestedWhilePaused) {
+                    gcRequestedWhilePaused = true;
+                    System.gc();
+                }
+            }
+            gcCountAtLastEvaluation = collections;
+            updateLevel();
+        } catch (Exception e) {
+            logger.error("Erro ao avaliar a pressão de heap", e);
+        }
+    }
+
+    // Chamado pela thread de notificações de GC e pelo agendador: a decisão inteira fica sob o levelLock
+    private void updateLevel() {
+        if (!props.throttle()) {
+            return;
+        }
+        levelLock.lock();
+        try {
+            applyLevel();
+        } finally {
+            levelLock.unlock();
+        }
+    }
+
+    private void applyLevel() {
+        double occupancy = oldGenOccupancy;
+        boolean pausesOverBudget = gcPauseRatio > props.gcPauseBudget();
+        Level current = level;
+        Level next;
+        if (occupancy >= props.pauseWatermark()) {
+            next = Level.PAUSED;
+        } else if (occupancy >= props.slowWatermark() || pausesOverBudget) {
+            next = Level.SLOW;
+        } else if (current != Level.NORMAL && occupancy >= props.resumeWatermark()) {
+            next = Level.SLOW; // Histerese: só volta ao normal abaixo do watermark de retomada
+        } else {
+            next = Level.NORMAL;
+        }
+        if (next == current) {
+            return;
+        }
+        level = next;
+        resumed.signalAll();
+        if (next != Level.PAUSED) {
+            gcRequestedWhilePaused = false;
+        }
+        meterRegistry.counter("rinha.memory.throttle.transitions", "level", next.name().toLowerCase()).increment();
+        if (next == Level.NORMAL) {
+            logger.info("PRESSÃO DE HEAP: consumo retomado (old gen {}%, pausas {}%).",
+                    Math.round(occupancy * 100), Math.round(gcPauseRatio * 100));
+        } else {
+            logger.warn("PRESSÃO DE HEAP: consumo em {} (old gen {}%, pausas {}%, alocação {} MB/s).", next,
+                    Math.round(occupancy * 100), Math.round(gcPauseRatio * 100),
+                    Math.round(allocationRateBytesPerSec / MEGABYTE));
+        }
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("rinha.memory.oldgen.occupancy", this, m -> m.oldGenOccupancy)
+                .description("Fração da old gen ocupada após a última coleta")
+                .register(meterRegistry);
+        Gauge.builder("rinha.memory.allocation.rate", this, m -> m.allocationRateBytesPerSec)
+                .description("Taxa de alocação no heap entre as duas últimas coletas")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("rinha.memory.gc.pause.ratio", this, m -> m.gcPauseRatio)
+                .description("Fração do tempo gasta em pausas de GC no último segundo")
+                .register(meterRegistry);
+        Gauge.builder("rinha.memory.throttle.level", this, m -> m.level.ordinal())
+                .description("Freio dos consumidores: 0 = normal, 1 = lento, 2 = pausado")
+                .register(meterRegistry);
+        for (Level value : Level.values()) {
+            Counter.builder("rinha.memory.throttle.transitions")
+                    .description("Mudanças de nível do freio por pressão de heap")
+                    .tag("level", value.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    // A old gen é o pool de heap que sobrevive às coletas jovens (G1 Old Gen, Tenured Gen, PS Old Gen...)
+    private static MemoryPoolMXBean findOldGenPool() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if (pool.getType() == MemoryType.HEAP && (name.contains("Old") || name.contains("Tenured"))) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    private static long heapUsed(Map<String, MemoryUsage> usageByPool) {
+        long used = 0;
+        for (MemoryUsage usage : usageByPool.values()) {
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    private static double occupancy(MemoryUsage usage) {
+        return occupancy(usage.getUsed(), usage);
+    }
+
+    private static double occupancy(long used, MemoryUsage limits) {
+        long max = limits.getMax() > 0 ? limits.getMax() : limits.getCommitted();
+        return max > 0 ? (double) used / max : 0;
     }
 
     private void monitorMemory() {
@@ -58,5 +333,14 @@ public class MemoryMonitorService {
     @PreDestroy
     public void stopMonitor() {
         scheduler.shutdown();
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (Exception e) {
+                logger.debug("Listener de GC já removido", e);
+            }
+        }
+        level = Level.NORMAL;
+        release(); // Libera quem ainda estiver esperando para o desligamento seguir
     }
 }
\ No newline at end of file
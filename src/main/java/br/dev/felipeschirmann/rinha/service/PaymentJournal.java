@@ -0,0 +1,382 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.PaymentRequest;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.JournalEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongBiFunction;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only, por instância, dos pagamentos aceitos e liquidados.
+ * O diretório é compartilhado: cada instância grava o seu journal-{id}.bin e o OpenResty grava o
+ * {@link #INGEST_LOG} dos pagamentos que enfileira direto no Redis. O replay lê todas as fontes.
+ * Usa um arquivo mapeado em memória com registros binários de tamanho fixo; cada escrita
+ * reserva sua posição com um contador atômico e o fsync é feito em grupo, periodicamente, pelo agendador.
+ * As escritas dividem entre si o lock de leitura; só o reset toma o de escrita, para que nenhuma escrita
+ * com posição reservada antes da limpeza grave no arquivo já zerado. Desligado por padrão (rinha.journal.enabled).
+ *
+ * Layout de cada registro (40 bytes):
+ * [tipo:1][processador:1][reservado:2][crc32:4][uuid msb:8][uuid lsb:8][centavos:8][epoch ms:8]
+ */
+@Service
+public class PaymentJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentJournal.class);
+    static final int RECORD_SIZE = 40;
+    private static final byte KIND_ACCEPTED = 1;
+    private static final byte KIND_SETTLED = 2;
+    private static final byte NO_PROCESSOR = -1;
+    // Uma linha "<epoch segundos.ms> <correlationId> <amount>" por pagamento aceito (log_format ingest do nginx.conf)
+    static final String INGEST_LOG = "ingest.log";
+    // Instante do último purge: registros mais antigos não valem mais, mesmo em journals que não foram limpos
+    private static final String PURGE_MARK = "purged-at";
+
+    private final RinhaProperties.Journal props;
+    private final PaymentKeyspace keyspace;
+    private final Path dir;
+    private final Path file;
+    private final ScheduledExecutorService fsyncScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicBoolean fullWarningLogged = new AtomicBoolean(false);
+    private final ReentrantReadWriteLock resetLock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long capacity;
+    private volatile long lastForcedPosition;
+
+    public PaymentJournal(RinhaProperties rinhaProperties, PaymentKeyspace keyspace) {
+        this.props = rinhaProperties.journal();
+        this.keyspace = keyspace;
+        this.dir = Path.of(props.dir());
+        this.file = dir.resolve("journal-" + rinhaProperties.instance().id() + ".bin");
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!props.enabled()) {
+            return;
+        }
+        Files.createDirectories(dir);
+        this.capacity = (long) props.sizeMb() * 1024 * 1024 / RECORD_SIZE * RECORD_SIZE;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        long end = findEnd(buffer, capacity);
+        writePosition.set(end);
+        lastForcedPosition = end;
+        logger.info("Journal aberto em {} ({} MB, {} registros existentes, fsync a cada {} ms).",
+                file, props.sizeMb(), end / RECORD_SIZE, props.fsyncPeriodMs());
+        fsyncScheduler.scheduleAtFixedRate(this::groupCommit, props.fsyncPeriodMs(), props.fsyncPeriodMs(), TimeUnit.MILLISECONDS);
+        // Só o purge invalida os registros. Um restart do Redis também muda o epoch, e é justamente
+        // quando o journal é necessário para o replay (JournalRecoveryService)
+        keyspace.onPurge(epoch -> reset());
+        keyspace.onPurgeInitiated(epoch -> markPurge());
+    }
+
+    public boolean isEnabled() {
+        return props.enabled();
+    }
+
+    public void accepted(PaymentRequest payment) {
+        if (props.enabled()) {
+            append(KIND_ACCEPTED, NO_PROCESSOR, payment.correlationId(), payment.amount(), Instant.now());
+        }
+    }
+
+    public void settled(PaymentRequest payment, ProcessorType type, Instant requestedAt) {
+        if (props.enabled()) {
+            append(KIND_SETTLED, (byte) type.ordinal(), payment.correlationId(), payment.amount(), requestedAt);
+        }
+    }
+
+    private void append(byte kind, byte processor, UUID correlationId, BigDecimal amount, Instant timestamp) {
+        resetLock.readLock().lock();
+        try {
+            write(kind, processor, correlationId, amount, timestamp);
+        } finally {
+            resetLock.readLock().unlock();
+        }
+    }
+
+    private void write(byte kind, byte processor, UUID correlationId, BigDecimal amount, Instant timestamp) {
+        long offset = writePosition.getAndAdd(RECORD_SIZE);
+        if (offset + RECORD_SIZE > capacity) {
+            if (fullWarningLogged.compareAndSet(false, true)) {
+                logger.error("Journal cheio ({} MB). Novos registros serão descartados até o próximo purge.", props.sizeMb());
+            }
+            return;
+        }
+        int base = (int) offset;
+        long msb = correlationId.getMostSignificantBits();
+        long lsb = correlationId.getLeastSignificantBits();
+        long cents = amount.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValue();
+        long millis = timestamp.toEpochMilli();
+
+        buffer.putLong(base + 8, msb);
+        buffer.putLong(base + 16, lsb);
+        buffer.putLong(base + 24, cents);
+        buffer.putLong(base + 32, millis);
+        buffer.put(base + 1, processor);
+        buffer.putInt(base + 4, checksum(kind, processor, msb, lsb, cents, millis));
+        // O tipo é gravado por último: um registro com tipo != 0 está completo
+        buffer.put(base, kind);
+    }
+
+    private void groupCommit() {
+        try {
+            long position = Math.min(writePosition.get(), capacity);
+            if (position > lastForcedPosition) {
+                buffer.force();
+                lastForcedPosition = position;
+            }
+        } catch (Exception e) {
+            logger.error("Falha no fsync do journal", e);
+        }
+    }
+
+    /**
+     * Posição atual de cada fonte do diretório: fim dos registros em cada journal e tamanho do {@link #INGEST_LOG}.
+     */
+    public Map<Path, Long> positions() {
+        Map<Path, Long> positions = new HashMap<>();
+        if (!props.enabled()) {
+            return positions;
+        }
+        for (Path source : sources()) {
+            try {
+                positions.put(source, source.equals(file) ? Math.min(writePosition.get(), capacity)
+                        : source.endsWith(INGEST_LOG) ? Files.size(source) : withMapped(source, PaymentJournal::findEnd));
+            } catch (IOException e) {
+                logger.warn("Falha ao ler a posição de {}", source, e);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Lê os registros válidos de todas as fontes do diretório, de {@code from} até {@code to} (exclusivo) em cada uma,
+     * na ordem em que foram gravados. Fonte ausente em {@code from} começa do início; {@code to} nulo lê até o fim.
+     * Registros anteriores ao último purge são ignorados.
+     */
+    public List<JournalEntry> read(Map<Path, Long> from, Map<Path, Long> to) {
+        List<JournalEntry> entries = new ArrayList<>();
+        if (!props.enabled()) {
+            return entries;
+        }
+        Instant purgedAt = purgedAt();
+        for (Path source : sources()) {
+            long start = from.getOrDefault(source, 0L);
+            long end = to == null ? Long.MAX_VALUE : to.getOrDefault(source, 0L);
+            try {
+                if (source.equals(file)) {
+                    readRecords(buffer, start, Math.min(end, Math.min(writePosition.get(), capacity)), entries);
+                } else if (source.endsWith(INGEST_LOG)) {
+                    readIngestLog(source, start, end, entries);
+                } else {
+                    withMapped(source, (mapped, size) -> {
+                        readRecords(mapped, start, Math.min(end, size), entries);
+                        return 0L;
+                    });
+                }
+            } catch (IOException e) {
+                logger.warn("Falha ao ler {} para o replay", source, e);
+            }
+        }
+        entries.removeIf(entry -> entry.timestamp().isBefore(purgedAt));
+        return entries;
+    }
+
+    private List<Path> sources() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.equals(INGEST_LOG) || (name.startsWith("journal-") && name.endsWith(".bin"));
+            }).sorted().toList();
+        } catch (IOException e) {
+            logger.warn("Falha ao listar o diretório do journal {}", dir, e);
+            return List.of(file);
+        }
+    }
+
+    // Journal de outra instância: mapeado só para leitura, enquanto ela continua gravando no mesmo arquivo
+    private static long withMapped(Path source, ToLongBiFunction<ByteBuffer, Long> reader) throws IOException {
+        try (FileChannel other = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = other.size() / RECORD_SIZE * RECORD_SIZE;
+            return reader.applyAsLong(other.map(FileChannel.MapMode.READ_ONLY, 0, size), size);
+        }
+    }
+
+    private static void readRecords(ByteBuffer records, long from, long to, List<JournalEntry> entries) {
+        for (long offset = from; offset + RECORD_SIZE <= to; offset += RECORD_SIZE) {
+            int base = (int) offset;
+            byte kind = records.get(base);
+            if (!isValid(records, base)) {
+                continue; // Registro reservado mas não concluído (ou corrompido)
+            }
+            byte processor = records.get(base + 1);
+            UUID correlationId = new UUID(records.getLong(base + 8), records.getLong(base + 16));
+            BigDecimal amount = BigDecimal.valueOf(records.getLong(base + 24), 2);
+            Instant timestamp = Instant.ofEpochMilli(records.getLong(base + 32));
+            entries.add(new JournalEntry(
+                    kind == KIND_SETTLED ? JournalEntry.Kind.SETTLED : JournalEntry.Kind.ACCEPTED,
+                    processor == NO_PROCESSOR ? null : ProcessorType.values()[processor],
+                    correlationId, amount, timestamp));
+        }
+    }
+
+    // Só linhas completas: a última pode estar pela metade enquanto o nginx ainda esvazia o buffer
+    private static void readIngestLog(Path source, long from, long to, List<JournalEntry> entries) throws IOException {
+        try (FileChannel log = FileChannel.open(source, StandardOpenOption.READ)) {
+            long end = Math.min(to, log.size());
+            if (end <= from) {
+                return;
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - from));
+            log.read(bytes, from);
+            String content = new String(bytes.array(), 0, bytes.position(), StandardCharsets.US_ASCII);
+            int lineStart = 0;
+            for (int newline = content.indexOf('\n'); newline >= 0; newline = content.indexOf('\n', lineStart)) {
+                String[] fields = content.substring(lineStart, newline).split(" ");
+                lineStart = newline + 1;
+                try {
+                    long millis = new BigDecimal(fields[0]).movePointRight(3).longValue();
+                    entries.add(new JournalEntry(JournalEntry.Kind.ACCEPTED, null, UUID.fromString(fields[1]),
+                            new BigDecimal(fields[2]), Instant.ofEpochMilli(millis)));
+                } catch (RuntimeException e) {
+                    logger.warn("Linha inválida no {} ignorada", INGEST_LOG);
+                }
+            }
+        }
+    }
+
+    private Instant purgedAt() {
+        try {
+            Path mark = dir.resolve(PURGE_MARK);
+            return Files.exists(mark) ? Instant.ofEpochMilli(Long.parseLong(Files.readString(mark).trim())) : Instant.EPOCH;
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Falha ao ler a marca do último purge", e);
+            return Instant.EPOCH;
+        }
+    }
+
+    // Grava a marca do purge e esvazia o ingest.log (o nginx continua gravando com O_APPEND no mesmo arquivo)
+    private void markPurge() {
+        try {
+            Path temp = dir.resolve(PURGE_MARK + ".tmp");
+            Files.writeString(temp, String.valueOf(System.currentTimeMillis()));
+            Files.move(temp, dir.resolve(PURGE_MARK), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Falha ao gravar a marca do purge no journal", e);
+        }
+        Path ingestLog = dir.resolve(INGEST_LOG);
+        if (Files.exists(ingestLog)) {
+            try (FileChannel log = FileChannel.open(ingestLog, StandardOpenOption.WRITE)) {
+                log.truncate(0);
+            } catch (IOException e) {
+                // Ex: criado pelo nginx como root. A marca do purge já descarta as linhas antigas no replay
+                logger.warn("Não foi possível esvaziar o {}: {}", INGEST_LOG, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Descarta todo o conteúdo do journal local (usado no purge).
+     */
+    public void reset() {
+        if (!props.enabled()) {
+            return;
+        }
+        // Espera as escritas em andamento terminarem e bloqueia as novas até a limpeza acabar
+        resetLock.writeLock().lock();
+        try {
+            long end = Math.min(writePosition.get(), capacity);
+            for (long offset = 0; offset < end; offset += RECORD_SIZE) {
+                buffer.put((int) offset, (byte) 0);
+            }
+            buffer.force();
+            writePosition.set(0);
+            lastForcedPosition = 0;
+            fullWarningLogged.set(false);
+        } finally {
+            resetLock.writeLock().unlock();
+        }
+        logger.info("Journal limpo.");
+    }
+
+    // O fim do journal é o primeiro slot com tipo zero
+    private static long findEnd(ByteBuffer records, long size) {
+        long offset = 0;
+        while (offset + RECORD_SIZE <= size && records.get((int) offset) != 0) {
+            offset += RECORD_SIZE;
+        }
+        return offset;
+    }
+
+    private static boolean isValid(ByteBuffer records, int base) {
+        byte kind = records.get(base);
+        if (kind != KIND_ACCEPTED && kind != KIND_SETTLED) {
+            return false;
+        }
+        int expected = checksum(kind, records.get(base + 1), records.getLong(base + 8), records.getLong(base + 16),
+                records.getLong(base + 24), records.getLong(base + 32));
+        return expected == records.getInt(base + 4);
+    }
+
+    private static int checksum(byte kind, byte processor, long msb, long lsb, long cents, long millis) {
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(processor);
+        for (long value : new long[]{msb, lsb, cents, millis}) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                crc.update((int) (value >>> shift));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (!props.enabled()) {
+            return;
+        }
+        fsyncScheduler.shutdown();
+        groupCommit();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Falha ao fechar o journal", e);
+        }
+    }
+}
\ No newline at end of file
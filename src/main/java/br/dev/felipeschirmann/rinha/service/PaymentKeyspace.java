@@ -0,0 +1,217 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Todas as chaves de pagamento ficam sob uma geração (epoch): payments:{epoch}:...
+ * O purge vira um único INCR do epoch; as instâncias trocam de geração ao receber a
+ * notificação e as chaves antigas são liberadas em segundo plano com UNLINK.
+ *
+ * Um restart do Redis (save "") também muda o epoch, mas não é purge: o contador volta a zero e os dados
+ * se perdem. Para distinguir os dois casos, {@link #RUN_KEY} guarda um token criado na primeira leitura
+ * após o Redis subir. Se o token some ou muda, o Redis perdeu o estado: a instância troca de geração sem
+ * avisar os ouvintes de purge, e a que recriou o token avisa os ouvintes de {@link #onRedisReset}.
+ */
+@Service
+public class PaymentKeyspace {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentKeyspace.class);
+    private static final String EPOCH_KEY = "payments:epoch";
+    private static final String EPOCH_CHANNEL = "payments:epoch:changed";
+    // Token da execução atual do Redis; some junto com os dados num restart
+    private static final String RUN_KEY = "payments:redis-run";
+    // Tempo para as escritas em andamento na geração antiga terminarem antes do UNLINK
+    private static final long RECLAIM_DELAY_MS = 2000;
+    private static final long RESYNC_PERIOD_MS = 5000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final int shards;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<LongConsumer> purgeListeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> purgeInitiatedListeners = new CopyOnWriteArrayList<>();
+    private final List<LongConsumer> resetListeners = new CopyOnWriteArrayList<>();
+
+    private volatile long epoch;
+    // Token do Redis visto na última sincronização; null até a primeira
+    private volatile String redisRun;
+
+    public PaymentKeyspace(RedisTemplate<String, String> redisTemplate,
+                           RedisMessageListenerContainer listenerContainer,
+                           RinhaProperties rinhaProperties) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.shards = rinhaProperties.queue().shards();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        this.epoch = readEpoch();
+        // Sem token, o Redis acabou de subir vazio: a primeira sincronização o cria e dispara o replay
+        this.redisRun = redisTemplate.opsForValue().get(RUN_KEY);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            long announced = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (announced > epoch) {
+                switchTo(announced, true);
+            }
+        }, new ChannelTopic(EPOCH_CHANNEL));
+        // Pub/Sub não é durável: uma leitura periódica cobre notificações perdidas
+        scheduler.scheduleAtFixedRate(this::resync, RESYNC_PERIOD_MS, RESYNC_PERIOD_MS, TimeUnit.MILLISECONDS);
+        logger.info("Keyspace de pagamentos na geração {}.", epoch);
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public String queueKey(long generation, int shard) {
+        return "payments:" + generation + ":queue:" + shard;
+    }
+
+    public String verifyQueueKey() {
+        return "payments:" + epoch + ":verify_queue";
+    }
+
+    public String summaryKey(ProcessorType type) {
+        return summaryKey(epoch, type);
+    }
+
+    public String summaryKey(long generation, ProcessorType type) {
+        return "payments:" + generation + ":" + type.name().toLowerCase();
+    }
+
+    /**
+     * Registra um callback chamado com a nova geração a cada purge (epoch maior que o atual).
+     */
+    public void onPurge(LongConsumer listener) {
+        purgeListeners.add(listener);
+    }
+
+    /**
+     * Registra um callback chamado só na instância que executou o purge, depois dos de {@link #onPurge}.
+     */
+    public void onPurgeInitiated(LongConsumer listener) {
+        purgeInitiatedListeners.add(listener);
+    }
+
+    /**
+     * Registra um callback chamado com a geração atual quando o Redis perdeu o estado (restart).
+     * Só a instância que detecta primeiro, a que recria o token, é avisada.
+     */
+    public void onRedisReset(LongConsumer listener) {
+        resetListeners.add(listener);
+    }
+
+    /**
+     * Purge O(1): incrementa o epoch, avisa todas as instâncias e agenda a liberação da geração antiga.
+     */
+    public long advance() {
+        long previous = epoch;
+        Long next = redisTemplate.opsForValue().increment(EPOCH_KEY);
+        if (next == null) {
+            throw new IllegalStateException("Redis não retornou o novo epoch");
+        }
+        if (next > epoch) {
+            switchTo(next, true);
+        }
+        notify(purgeInitiatedListeners, next);
+        redisTemplate.convertAndSend(EPOCH_CHANNEL, String.valueOf(next));
+        scheduler.schedule(() -> reclaim(previous), RECLAIM_DELAY_MS, TimeUnit.MILLISECONDS);
+        return next;
+    }
+
+    private synchronized void switchTo(long generation, boolean purge) {
+        if (generation == epoch) {
+            return;
+        }
+        epoch = generation;
+        logger.info("Keyspace de pagamentos mudou para a geração {}.", generation);
+        if (purge) {
+            notify(purgeListeners, generation);
+        }
+    }
+
+    private void notify(List<LongConsumer> listeners, long generation) {
+        for (LongConsumer listener : listeners) {
+            try {
+                listener.accept(generation);
+            } catch (Exception e) {
+                logger.error("Erro ao notificar a troca de geração", e);
+            }
+        }
+    }
+
+    private void reclaim(long generation) {
+        try {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                keys.add(queueKey(generation, i));
+            }
+            keys.add("payments:" + generation + ":verify_queue");
+            for (ProcessorType type : ProcessorType.values()) {
+                keys.add(summaryKey(generation, type));
+            }
+            // UNLINK libera a memória numa thread do Redis, sem bloquear o loop principal
+            Long removed = redisTemplate.unlink(keys);
+            logger.info("Geração {} liberada ({} chaves).", generation, removed);
+        } catch (Exception e) {
+            logger.error("Falha ao liberar a geração {} do keyspace", generation, e);
+        }
+    }
+
+    // Um epoch maior é um purge perdido; um token diferente é um restart do Redis, e aí o epoch pode até ter caído
+    private void resync() {
+        try {
+            String candidate = UUID.randomUUID().toString();
+            boolean created = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(RUN_KEY, candidate));
+            String run = created ? candidate : redisTemplate.opsForValue().get(RUN_KEY);
+            long current = readEpoch();
+            if (run == null || run.equals(redisRun)) {
+                if (current > epoch) {
+                    switchTo(current, true);
+                }
+                return;
+            }
+            boolean firstSync = redisRun == null && !created;
+            redisRun = run;
+            switchTo(current, false);
+            if (created) {
+                logger.warn("Redis sem estado detectado (token da execução ausente). Geração atual: {}.", current);
+                notify(resetListeners, current);
+            } else if (!firstSync) {
+                logger.warn("Redis reiniciado por outra instância. Geração atual: {}.", current);
+            }
+        } catch (Exception e) {
+            logger.warn("Falha ao sincronizar o epoch do keyspace", e);
+        }
+    }
+
+    private long readEpoch() {
+        String value = redisTemplate.opsForValue().get(EPOCH_KEY);
+        return value != null ? Long.parseLong(value) : 0L;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
\ No newline at end of file
@@ -1,20 +1,25 @@
 package br.dev.felipeschirmann.rinha.service;
 
+import br.dev.felipeschirmann.rinha.config.ProcessorBreakers;
+import br.dev.felipeschirmann.rinha.config.ProcessorClients;
+import br.dev.felipeschirmann.rinha.config.ProcessorClients.TrafficClass;
 import br.dev.felipeschirmann.rinha.config.RinhaProperties;
 import br.dev.felipeschirmann.rinha.model.PaymentRequest;
 import br.dev.felipeschirmann.rinha.model.ProcessorType;
-import br.dev.felipeschirmann.rinha.model.dto.HealthCheckResponse;
 import br.dev.felipeschirmann.rinha.model.dto.HealthState;
 import br.dev.felipeschirmann.rinha.model.dto.ProcessorPaymentRequest;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
 import br.dev.felipeschirmann.rinha.model.dto.VerificationTask;
+import br.dev.felipeschirmann.rinha.routing.RoutingSignals;
+import br.dev.felipeschirmann.rinha.routing.RoutingStrategy;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
@@ -23,13 +28,24 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
 
-import java.time.Duration;
+import java.net.SocketTimeoutException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class PaymentProcessorService {
@@ -37,67 +53,140 @@ public class PaymentProcessorService {
     private static final Logger logger = LoggerFactory.getLogger(PaymentProcessorService.class);
     private static final Logger paymentTraceLogger = LoggerFactory.getLogger("PaymentTrace");
 
-    private final ScheduledExecutorService healthScheduler = Executors.newSingleThreadScheduledExecutor();
     private final ScheduledExecutorService strategyScheduler = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> strategyTask;
+    private int strategyPeriodMs;
+    private volatile int failureThreshold;
+    // Profundidade da fila amostrada a cada reavaliação da estratégia: o pagamento não faz LLEN para decidir a rota
+    private volatile long queueSize;
     private ExecutorService consumerExecutor;
     private ExecutorService verificationExecutor;
-
-    private volatile ProcessorType preferredProcessor = ProcessorType.DEFAULT;
-
-    private final RestClient defaultRestClient;
-    private final RestClient fallbackRestClient;
+    // Limita os pagamentos em voo (rinha.executor.consumer-threads): virtual threads são baratas, conexões e memória não
+    private final Semaphore inFlightPermits;
+    private Future<?> dispatcher;
+    private Future<?> verifier;
+
+    // Dreno no desligamento: os loops param de retirar trabalho e o que não terminar no prazo volta ao Redis
+    private volatile boolean draining = false;
+    // Pagamentos retirados das filas e ainda não concluídos. sentTo/requestedAt ficam preenchidos depois do envio ao processador
+    private record InFlight(PaymentRequest payment, ProcessorType sentTo, Instant requestedAt) {
+    }
+    private final Map<UUID, InFlight> inFlight = new ConcurrentHashMap<>();
+    // Trabalho devolvido durante o dreno, enviado ao Redis num único pipeline no fim
+    private final Object handBackLock = new Object();
+    private final List<PaymentRequest> handBackPayments = new ArrayList<>();
+    private final List<VerificationTask> handBackTasks = new ArrayList<>();
+    // Pagamentos cujo destino já foi decidido no dreno (devolvido, enviado para verificação ou liquidado aqui).
+    // Um worker interrompido e o snapshot final podem chegar ao mesmo pagamento: só o primeiro vale
+    private final Set<UUID> drainClaims = new HashSet<>();
+    private boolean handBackFlushed = false;
+
+    private final ProcessorClients processorClients;
     private final PaymentStorageService storageService;
     private final PaymentSummaryService summaryService;
-    private final CircuitBreaker defaultCb;
-    private final CircuitBreaker fallbackCb;
+    private final PaymentJournal journal;
+    private final AdaptiveTimeoutService timeoutService;
+    // Os breakers são buscados a cada chamada: o tuning em tempo de execução pode trocá-los
+    private final ProcessorBreakers processorBreakers;
+    private final RuntimeTuningService tuningService;
     private final RinhaProperties rinhaProperties;
-    private final RedisTemplate<String, String> redisTemplate;
     private final SharedHealthStateService healthStateService;
+    private final MemoryMonitorService memoryMonitor;
+    private final RoutingStrategy routingStrategy;
+    private final MeterRegistry meterRegistry;
+    private final RedisCommandBudget commandBudget;
 
-    public PaymentProcessorService(RestClient.Builder restClientBuilder,
+    public PaymentProcessorService(ProcessorClients processorClients,
                                    PaymentStorageService storageService,
                                    PaymentSummaryService summaryService,
-                                   @Value("${processor.default.url}") String defaultUrl,
-                                   @Value("${processor.fallback.url}") String fallbackUrl,
-                                   CircuitBreaker defaultProcessorCircuitBreaker,
-                                   CircuitBreaker fallbackProcessorCircuitBreaker,
-                                   RedisTemplate<String, String> redisTemplate,
+                                   PaymentJournal journal,
+                                   AdaptiveTimeoutService timeoutService,
+                                   ProcessorBreakers processorBreakers,
+                                   RuntimeTuningService tuningService,
                                    SharedHealthStateService healthStateService,
+                                   MemoryMonitorService memoryMonitor,
+                                   RoutingStrategy routingStrategy,
+                                   MeterRegistry meterRegistry,
+                                   RedisCommandBudget commandBudget,
                                    RinhaProperties rinhaProperties) {
         this.storageService = storageService;
         this.summaryService = summaryService;
-        this.defaultCb = defaultProcessorCircuitBreaker;
-        this.fallbackCb = fallbackProcessorCircuitBreaker;
+        this.journal = journal;
+        this.timeoutService = timeoutService;
+        this.processorBreakers = processorBreakers;
+        this.tuningService = tuningService;
         this.rinhaProperties = rinhaProperties;
-        this.defaultRestClient = restClientBuilder.baseUrl(defaultUrl).build();
-        this.fallbackRestClient = restClientBuilder.baseUrl(fallbackUrl).build();
-        this.redisTemplate = redisTemplate;
+        this.processorClients = processorClients;
         this.healthStateService = healthStateService;
+        this.memoryMonitor = memoryMonitor;
+        this.routingStrategy = routingStrategy;
+        this.meterRegistry = meterRegistry;
+        this.commandBudget = commandBudget;
+        this.inFlightPermits = new Semaphore(Math.max(1, rinhaProperties.executor().consumerThreads()));
     }
 
     @PostConstruct
     public void initialize() {
-        logger.info("Iniciando processador de pagamentos com estratégia adaptativa...");
-        healthScheduler.scheduleAtFixedRate(this::checkDefaultHealth, 0, 5, TimeUnit.SECONDS);
-        healthScheduler.scheduleAtFixedRate(this::checkFallbackHealth, 1, 5, TimeUnit.SECONDS);
-
-        int strategyPeriod = rinhaProperties.scheduler().strategyDecisionPeriodMs();
-        strategyScheduler.scheduleAtFixedRate(this::decideStrategy, 1, strategyPeriod, TimeUnit.MILLISECONDS);
+        logger.info("Iniciando processador de pagamentos com estratégia '{}' ({} pagamentos em voo no máximo)...",
+                routingStrategy.name(), rinhaProperties.executor().consumerThreads());
+        // Também agenda a reavaliação da estratégia, com o período atual
+        tuningService.onChange(this::applyTuning);
 
         consumerExecutor = Executors.newVirtualThreadPerTaskExecutor();
-        consumerExecutor.submit(this::dispatcherLoop);
+        dispatcher = consumerExecutor.submit(this::dispatcherLoop);
 
         verificationExecutor = Executors.newVirtualThreadPerTaskExecutor();
-        verificationExecutor.submit(this::verificationLoop);
+        verifier = verificationExecutor.submit(this::verificationLoop);
+    }
+
+    private synchronized void applyTuning(TuningValues values) {
+        failureThreshold = values.failureThreshold();
+        routingStrategy.retune(values);
+        if (strategyTask == null || strategyPeriodMs != values.strategyDecisionPeriodMs()) {
+            if (strategyTask != null) {
+                strategyTask.cancel(false);
+            }
+            strategyPeriodMs = values.strategyDecisionPeriodMs();
+            strategyTask = strategyScheduler.scheduleAtFixedRate(this::refreshStrategy, 1, strategyPeriodMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     private void dispatcherLoop() {
-        while (!Thread.currentThread().isInterrupted()) {
+        while (!draining && !Thread.currentThread().isInterrupted()) {
             try {
+                // Só retira da fila quando há vaga e o heap aguenta: o excedente fica no Redis e não na memória da instância
+                memoryMonitor.awaitCapacity();
+                if (draining) {
+                    break;
+                }
+                inFlightPermits.acquire();
+                // O BRPOP já conta no orçamento de comandos do pagamento que ele retirar
+                RedisCommandBudget.Scope scope = commandBudget.begin(RedisCommandBudget.PAYMENT);
                 PaymentRequest payment = storageService.takePayment();
-                if (payment != null) {
-                    consumerExecutor.submit(() -> processPayment(payment));
+                commandBudget.detach();
+                if (payment == null) {
+                    commandBudget.discard(scope);
+                    inFlightPermits.release();
+                    continue;
                 }
+                if (draining) {
+                    // Retirado durante o BRPOP que estava em andamento quando o dreno começou
+                    commandBudget.discard(scope);
+                    inFlightPermits.release();
+                    handBack(payment);
+                    break;
+                }
+                inFlight.put(payment.correlationId(), new InFlight(payment, null, null));
+                consumerExecutor.submit(() -> {
+                    commandBudget.attach(scope);
+                    try {
+                        processPayment(payment);
+                    } finally {
+                        commandBudget.end(scope);
+                        inFlight.remove(payment.correlationId());
+                        inFlightPermits.release();
+                    }
+                });
             } catch (InterruptedException e) {
                 logger.warn("Thread despachante interrompida. Desligando...");
                 Thread.currentThread().interrupt();
@@ -107,14 +196,35 @@ public class PaymentProcessorService {
     }
 
     private void verificationLoop() {
-        while (!Thread.currentThread().isInterrupted()) {
+        while (!draining && !Thread.currentThread().isInterrupted()) {
             try {
+                memoryMonitor.awaitCapacity();
+                if (draining) {
+                    break;
+                }
+                RedisCommandBudget.Scope scope = commandBudget.begin(RedisCommandBudget.VERIFICATION);
                 VerificationTask task = storageService.takeForVerification();
-                if (task != null) {
-                    verificationExecutor.submit(() ->
-                            verifyPaymentConsistency(task.payment(), task.type(), task.tentativeTimestamp())
-                    );
+                commandBudget.detach();
+                if (task == null) {
+                    commandBudget.discard(scope);
+                    continue;
+                }
+                if (draining) {
+                    commandBudget.discard(scope);
+                    handBack(task);
+                    break;
                 }
+                UUID id = task.payment().correlationId();
+                inFlight.put(id, new InFlight(task.payment(), task.type(), task.tentativeTimestamp()));
+                verificationExecutor.submit(() -> {
+                    commandBudget.attach(scope);
+                    try {
+                        verifyPaymentConsistency(task.payment(), task.type(), task.tentativeTimestamp());
+                    } finally {
+                        commandBudget.end(scope);
+                        inFlight.remove(id);
+                    }
+                });
             } catch (InterruptedException e) {
                 logger.warn("Thread de verificação interrompida. Desligando...");
                 Thread.currentThread().interrupt();
@@ -124,48 +234,56 @@ public class PaymentProcessorService {
     }
 
     private void processPayment(PaymentRequest payment) {
-        ProcessorType type = this.preferredProcessor;
-
-        long queueSize = storageService.getQueueSize();
-        HealthState fallbackState = healthStateService.getState(ProcessorType.FALLBACK);
-        if (type == ProcessorType.DEFAULT && queueSize > rinhaProperties.queue().fallbackTriggerSize()) {
-            if (fallbackState.consecutiveFailures() < rinhaProperties.processor().failureThreshold()) {
-                type = ProcessorType.FALLBACK;
-                paymentTraceLogger.debug("ROTA: DEFAULT sobrecarregado (fila {}). Usando FALLBACK para {}.", queueSize, payment.correlationId());
-            }
-        }
+        ProcessorType type = routingStrategy.route(currentSignals(queueSize));
 
-        CircuitBreaker cb = (type == ProcessorType.DEFAULT) ? defaultCb : fallbackCb;
-        RestClient client = (type == ProcessorType.DEFAULT) ? defaultRestClient : fallbackRestClient;
+        CircuitBreaker cb = processorBreakers.get(type);
+        RestClient client = processorClients.client(type, TrafficClass.PAYMENT);
         var processorRequest = new ProcessorPaymentRequest(payment.correlationId(), payment.amount(), Instant.now());
 
+        final ProcessorType target = type;
+        inFlight.put(payment.correlationId(), new InFlight(payment, type, processorRequest.requestedAt()));
         try {
             cb.executeRunnable(() -> {
+                long start = System.nanoTime();
                 client.post().uri("/payments")
                         .contentType(MediaType.APPLICATION_JSON)
                         .body(processorRequest)
                         .retrieve()
                         .toBodilessEntity();
+                timeoutService.recordLatency(target, (System.nanoTime() - start) / 1_000_000);
             });
 
             paymentTraceLogger.debug("SUCESSO: Pagamento {} processado pelo {}.", payment.correlationId(), type);
-            if (type == ProcessorType.DEFAULT) {
-                summaryService.recordSuccessfulDefaultPayment(payment.amount(), processorRequest.requestedAt());
-            } else {
-                summaryService.recordSuccessfulFallbackPayment(payment.amount(), processorRequest.requestedAt());
-            }
+            recordSuccess(payment, type, processorRequest.requestedAt());
         } catch (CallNotPermittedException e) {
             requeuePayment(payment, "circuit breaker para " + type + " aberto");
         } catch (HttpServerErrorException e) {
+            routingStrategy.recordOutcome(type, false);
             paymentTraceLogger.debug("FALHA (5xx): Servidor {} retornou erro {}. Verificando consistência para o pagamento {}...", type, e.getStatusCode().value(), payment.correlationId());
             verifyPaymentConsistency(payment, type, processorRequest.requestedAt());
         } catch (HttpClientErrorException e) {
+            commandBudget.mark("discarded");
             if (e.getStatusCode() == HttpStatus.BAD_REQUEST) {
                 logger.error("ERRO IRRECUPERÁVEL (400) no {}: Pagamento {} descartado.", type, payment.correlationId());
             } else {
                 logger.error("Erro de cliente INESPERADO ({}) no {}: Pagamento {} foi descartado ou precisa de análise.", e.getStatusCode().value(), type, payment.correlationId());
             }
         } catch (ResourceAccessException e) {
+            if (e.getCause() instanceof ConnectionRequestTimeoutException) {
+                // Pool de pagamentos do processador esgotado: a requisição nem saiu, então só devolve à fila
+                processorClients.recordRejection(type, TrafficClass.PAYMENT);
+                requeuePayment(payment, "pool HTTP de " + type + " esgotado");
+                return;
+            }
+            if (e.getCause() instanceof SocketTimeoutException) {
+                // Estourou o prazo: libera a thread e vai direto para o fluxo de verificação de consistência
+                timeoutService.recordTimeout(type);
+                routingStrategy.recordOutcome(type, false);
+                paymentTraceLogger.debug("TIMEOUT: Pagamento {} excedeu {} ms no {}. Enviando para verificação.", payment.correlationId(), timeoutService.responseTimeoutMs(type), type);
+                deferVerification(new VerificationTask(payment, type, processorRequest.requestedAt()));
+                return;
+            }
+            routingStrategy.recordOutcome(type, false);
             paymentTraceLogger.debug("FALHA (Rede): Pagamento {} encontrou '{}'. Verificando consistência...", payment.correlationId(), e.getClass().getSimpleName());
             verifyPaymentConsistency(payment, type, processorRequest.requestedAt());
         } catch (Exception e) {
@@ -174,87 +292,137 @@ public class PaymentProcessorService {
         }
     }
 
-    private void decideStrategy() {
-        ProcessorType currentPreference = this.preferredProcessor;
-        int failureThreshold = rinhaProperties.processor().failureThreshold();
-        long maxAge = rinhaProperties.processor().healthDataMaxAgeMs();
-        Instant now = Instant.now();
-
-        // Obtém o estado de saúde e calcula a idade da informação para cada processador
-        HealthState defaultState = healthStateService.getState(ProcessorType.DEFAULT);
-        long defaultAge = Duration.between(defaultState.lastCheckedAt(), now).toMillis();
+    private void refreshStrategy() {
+        try {
+            queueSize = storageService.getQueueSize();
+            routingStrategy.refresh(currentSignals(queueSize));
+        } catch (Exception e) {
+            logger.error("Erro ao reavaliar a estratégia de roteamento", e);
+        }
+    }
 
-        HealthState fallbackState = healthStateService.getState(ProcessorType.FALLBACK);
-        long fallbackAge = Duration.between(fallbackState.lastCheckedAt(), now).toMillis();
+    private RoutingSignals currentSignals(long queueSize) {
+        return new RoutingSignals(Instant.now(), queueSize,
+                healthStateService.getState(ProcessorType.DEFAULT),
+                healthStateService.getState(ProcessorType.FALLBACK),
+                isOpen(processorBreakers.get(ProcessorType.DEFAULT)), isOpen(processorBreakers.get(ProcessorType.FALLBACK)));
+    }
 
-        // Um processador só é considerado "confiável" se não tiver falhas E se sua informação for recente
-        boolean isDefaultReliable = defaultState.consecutiveFailures() < failureThreshold && defaultAge < maxAge;
-        boolean isFallbackReliable = fallbackState.consecutiveFailures() < failureThreshold && fallbackAge < maxAge;
+    // FORCED_OPEN é o estado imposto pelo circuit breaker de cluster
+    private static boolean isOpen(CircuitBreaker cb) {
+        return cb.getState() == CircuitBreaker.State.OPEN || cb.getState() == CircuitBreaker.State.FORCED_OPEN;
+    }
 
-        if (isDefaultReliable) {
-            // Regra #1: Se o default é confiável, ele é o preferido.
-            this.preferredProcessor = ProcessorType.DEFAULT;
-            if (currentPreference != ProcessorType.DEFAULT) {
-                logger.warn("ESTRATÉGIA: Processador DEFAULT confiável. Roteando preferencialmente para DEFAULT.");
-            }
-        } else if (isFallbackReliable) {
-            // Regra #2: Se o default não é confiável, mas o fallback é, usamos o fallback.
-            this.preferredProcessor = ProcessorType.FALLBACK;
-            if (currentPreference != ProcessorType.FALLBACK) {
-                logger.warn("ESTRATÉGIA: Processador DEFAULT não confiável. Roteando preferencialmente para FALLBACK.");
-            }
+    private void recordSuccess(PaymentRequest payment, ProcessorType type, Instant requestedAt) {
+        if (draining && !claim(payment.correlationId())) {
+            // Já devolvido ao Redis para verificação: a outra instância é quem vai contabilizar
+            paymentTraceLogger.debug("DRENO: sucesso de {} ignorado, pagamento já devolvido ao Redis.", payment.correlationId());
+            return;
+        }
+        routingStrategy.recordOutcome(type, true);
+        commandBudget.mark("settled");
+        if (type == ProcessorType.DEFAULT) {
+            summaryService.recordSuccessfulDefaultPayment(payment.amount(), requestedAt);
         } else {
-            // Regra #3: Se nenhum é confiável, mantemos a esperança no default e deixamos o Circuit Breaker agir.
-            this.preferredProcessor = ProcessorType.DEFAULT;
-            if (currentPreference != ProcessorType.DEFAULT) {
-                logger.error("ESTRATÉGIA: NENHUM processador confiável. Mantendo preferência no DEFAULT.");
-            }
+            summaryService.recordSuccessfulFallbackPayment(payment.amount(), requestedAt);
         }
+        journal.settled(payment, type, requestedAt);
     }
 
     private void requeuePayment(PaymentRequest payment, String reason) {
         paymentTraceLogger.debug("REENFILEIRADO: Pagamento {} devolvido para a fila. Motivo: {}.", payment.correlationId(), reason);
+        commandBudget.mark("requeued");
+        if (draining) {
+            handBack(payment);
+        } else {
+            storageService.recordPayment(payment);
+        }
+    }
+
+    private void deferVerification(VerificationTask task) {
+        commandBudget.mark("deferred");
+        if (draining) {
+            handBack(task);
+        } else {
+            storageService.enqueueForVerification(task);
+        }
+    }
+
+    private boolean claim(UUID correlationId) {
+        synchronized (handBackLock) {
+            return drainClaims.add(correlationId);
+        }
+    }
+
+    // Durante o dreno acumula para o pipeline final; depois dele, devolve direto. Cada pagamento sai uma vez só
+    private void handBack(PaymentRequest payment) {
+        synchronized (handBackLock) {
+            if (!drainClaims.add(payment.correlationId())) {
+                return;
+            }
+            if (!handBackFlushed) {
+                handBackPayments.add(payment);
+                return;
+            }
+        }
         storageService.recordPayment(payment);
     }
 
+    private void handBack(VerificationTask task) {
+        synchronized (handBackLock) {
+            if (!drainClaims.add(task.payment().correlationId())) {
+                return;
+            }
+            if (!handBackFlushed) {
+                handBackTasks.add(task);
+                return;
+            }
+        }
+        storageService.enqueueForVerification(task);
+    }
+
     private void verifyPaymentConsistency(PaymentRequest payment, ProcessorType type, Instant tentativeTimestamp) {
-        RestClient client = (type == ProcessorType.DEFAULT) ? defaultRestClient : fallbackRestClient;
+        RestClient client = processorClients.client(type, TrafficClass.VERIFY);
         int maxRetries = 3;
         long backoffDelayMs = 100;
 
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
             HealthState targetState = healthStateService.getState(type);
-            if (targetState.consecutiveFailures() >= rinhaProperties.processor().failureThreshold()) {
+            if (targetState.consecutiveFailures() >= failureThreshold) {
                 paymentTraceLogger.debug("CONSISTÊNCIA: Abortando verificação para {} pois o processador {} já está offline.", payment.correlationId(), type);
-                storageService.enqueueForVerification(new VerificationTask(payment, type, tentativeTimestamp));
+                deferVerification(new VerificationTask(payment, type, tentativeTimestamp));
                 return;
             }
 
             try {
                 client.get().uri("/payments/{id}", payment.correlationId()).retrieve().toBodilessEntity();
                 paymentTraceLogger.debug("CONSISTÊNCIA-OK (tentativa {}/{}): Pagamento {} foi processado no {}. Contabilizando.", attempt, maxRetries, payment.correlationId(), type);
-                if (type == ProcessorType.DEFAULT) {
-                    summaryService.recordSuccessfulDefaultPayment(payment.amount(), tentativeTimestamp);
-                } else {
-                    summaryService.recordSuccessfulFallbackPayment(payment.amount(), tentativeTimestamp);
-                }
+                recordSuccess(payment, type, tentativeTimestamp);
                 return;
             } catch (HttpClientErrorException.NotFound e) {
                 paymentTraceLogger.debug("CONSISTÊNCIA-FALHA (tentativa {}/{}): Pagamento {} não localizado no {}. Reenfileirando.", attempt, maxRetries, payment.correlationId(), type);
                 requeuePayment(payment, "não localizado na consistência");
                 return;
             } catch (Exception e) {
+                if (e instanceof ResourceAccessException && e.getCause() instanceof ConnectionRequestTimeoutException) {
+                    processorClients.recordRejection(type, TrafficClass.VERIFY);
+                }
                 paymentTraceLogger.debug("CONSISTÊNCIA-ERRO (tentativa {}/{}): Erro ao verificar {}. Tentando novamente...", attempt, maxRetries, payment.correlationId());
+                if (draining) {
+                    // Não espera o backoff no desligamento: a verificação continua em outra instância
+                    deferVerification(new VerificationTask(payment, type, tentativeTimestamp));
+                    return;
+                }
                 if (attempt == maxRetries) {
                     logger.error("CONSISTÊNCIA: Todas as {} tentativas de verificação para {} falharam. Movendo para fila de verificação.", maxRetries, payment.correlationId());
-                    storageService.enqueueForVerification(new VerificationTask(payment, type, tentativeTimestamp));
+                    deferVerification(new VerificationTask(payment, type, tentativeTimestamp));
                 } else {
                     try {
                         Thread.sleep(backoffDelayMs);
                     } catch (InterruptedException interruptedException) {
                         Thread.currentThread().interrupt();
                         logger.error("Thread de verificação interrompida. Movendo para fila de verificação {}.", payment.correlationId());
-                        storageService.enqueueForVerification(new VerificationTask(payment, type, tentativeTimestamp));
+                        deferVerification(new VerificationTask(payment, type, tentativeTimestamp));
                         break;
                     }
                 }
@@ -262,68 +430,90 @@ public class PaymentProcessorService {
         }
     }
 
-    private void checkDefaultHealth() {
-        String lockKey = "health_lock:default";
-        Boolean acquiredLock = redisTemplate.opsForValue().setIfAbsent(lockKey, "locked", Duration.ofSeconds(4));
-        if (Boolean.TRUE.equals(acquiredLock)) {
-            HealthState currentState = healthStateService.getState(ProcessorType.DEFAULT);
+    /**
+     * Dreno: para de retirar trabalho das filas, espera os pagamentos em voo até drainTimeoutMs,
+     * devolve ao Redis num único pipeline o que sobrou e grava as escritas pendentes do sumário.
+     */
+    @PreDestroy
+    public void shutdown() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(rinhaProperties.executor().drainTimeoutMs());
+        logger.info("Iniciando dreno: {} pagamentos em voo.", inFlight.size());
+        draining = true;
+        // Um loop parado por pressão de heap (PAUSED) só voltaria quando o heap aliviasse
+        memoryMonitor.release();
+        strategyScheduler.shutdown();
+
+        // Os loops saem no próximo retorno do BRPOP (timeout de 1 s)
+        awaitLoop(dispatcher, "despachante", deadline);
+        awaitLoop(verifier, "verificação", deadline);
+        while (!inFlight.isEmpty() && System.nanoTime() < deadline) {
             try {
-                HealthCheckResponse health = defaultRestClient.get().uri("/payments/service-health").retrieve().body(HealthCheckResponse.class);
-                if (health != null && !health.failing()) {
-                    healthStateService.updateState(ProcessorType.DEFAULT, new HealthState(0, Instant.now()));
-                    if (currentState.consecutiveFailures() > 0) logger.info("Health Check: Default recuperado.");
-                } else {
-                    healthStateService.updateState(ProcessorType.DEFAULT, new HealthState(currentState.consecutiveFailures() + 1, Instant.now()));
-                    logger.warn("Health Check: Default COM FALHAS (falha consecutiva #{})", currentState.consecutiveFailures() + 1);
-                }
-            } catch (Exception e) {
-                healthStateService.updateState(ProcessorType.DEFAULT, new HealthState(currentState.consecutiveFailures() + 1, Instant.now()));
-                logger.error("Health Check: Falha ao contatar o Processador Default (falha consecutiva #{})", currentState.consecutiveFailures() + 1);
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-    }
+        if (consumerExecutor != null) {
+            shutdownExecutor(consumerExecutor, "Consumidor Principal");
+        }
+        if (verificationExecutor != null) {
+            shutdownExecutor(verificationExecutor, "Consumidor de Verificação");
+        }
 
-    private void checkFallbackHealth() {
-        String lockKey = "health_lock:fallback"; // Corrigido
-        Boolean acquiredLock = redisTemplate.opsForValue().setIfAbsent(lockKey, "locked", Duration.ofSeconds(4));
-        if (Boolean.TRUE.equals(acquiredLock)) {
-            HealthState currentState = healthStateService.getState(ProcessorType.FALLBACK); // Corrigido
-            try {
-                HealthCheckResponse health = fallbackRestClient.get().uri("/payments/service-health").retrieve().body(HealthCheckResponse.class); // Corrigido
-                if (health != null && !health.failing()) {
-                    healthStateService.updateState(ProcessorType.FALLBACK, new HealthState(0, Instant.now())); // Corrigido
-                    if (currentState.consecutiveFailures() > 0) logger.info("Health Check: Fallback recuperado.");
+        List<PaymentRequest> payments;
+        List<VerificationTask> tasks;
+        synchronized (handBackLock) {
+            // Presos além do prazo: os que já foram enviados podem ter sido processados, então vão para verificação
+            for (InFlight stuck : inFlight.values()) {
+                if (!drainClaims.add(stuck.payment().correlationId())) {
+                    continue; // O worker já decidiu o destino antes de ser interrompido
+                }
+                if (stuck.sentTo() == null) {
+                    handBackPayments.add(stuck.payment());
                 } else {
-                    healthStateService.updateState(ProcessorType.FALLBACK, new HealthState(currentState.consecutiveFailures() + 1, Instant.now())); // Corrigido
-                    logger.warn("Health Check: Fallback COM FALHAS (falha consecutiva #{})", currentState.consecutiveFailures() + 1);
+                    handBackTasks.add(new VerificationTask(stuck.payment(), stuck.sentTo(), stuck.requestedAt()));
                 }
-            } catch (Exception e) {
-                healthStateService.updateState(ProcessorType.FALLBACK, new HealthState(currentState.consecutiveFailures() + 1, Instant.now())); // Corrigido
-                logger.error("Health Check: Falha ao contatar o Processador Fallback (falha consecutiva #{})", currentState.consecutiveFailures() + 1);
             }
+            inFlight.clear();
+            payments = new ArrayList<>(handBackPayments);
+            tasks = new ArrayList<>(handBackTasks);
+            handBackFlushed = true;
         }
+        int handedBack = storageService.handBack(payments, tasks);
+        summaryService.flush();
+
+        long elapsedNanos = System.nanoTime() - start;
+        meterRegistry.timer("rinha.drain.duration").record(elapsedNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("rinha.drain.handed_back").increment(handedBack);
+        logger.info("Dreno concluído em {} ms: {} pagamentos e {} verificações devolvidos ao Redis.",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), payments.size(), tasks.size());
     }
 
-    @PreDestroy
-    public void shutdown() {
-        logger.info("Iniciando desligamento gracioso...");
-        healthScheduler.shutdown();
-        strategyScheduler.shutdown();
-        if (consumerExecutor != null) {
-            shutdownExecutor(consumerExecutor, "Consumidor Principal");
+    private void awaitLoop(Future<?> loop, String name, long deadline) {
+        if (loop == null) {
+            return;
         }
-        if (verificationExecutor != null) {
-            shutdownExecutor(verificationExecutor, "Consumidor de Verificação");
+        try {
+            loop.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Loop de {} não parou dentro do prazo do dreno.", name);
+        } catch (ExecutionException e) {
+            logger.error("Loop de {} terminou com erro.", name, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        logger.info("Agendadores e Executores finalizados.");
     }
 
     private void shutdownExecutor(ExecutorService executor, String name) {
         executor.shutdown();
         try {
-            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                logger.warn("Timeout no desligamento do executor '{}': algumas tarefas podem não ter sido finalizadas.", name);
+            // O prazo do dreno já foi consumido esperando os pagamentos em voo; aqui só se espera o encerramento
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.warn("Timeout no desligamento do executor '{}': interrompendo as tarefas restantes.", name);
                 executor.shutdownNow();
+                executor.awaitTermination(1, TimeUnit.SECONDS);
             } else {
                 logger.info("Executor '{}' finalizado com sucesso.", name);
             }
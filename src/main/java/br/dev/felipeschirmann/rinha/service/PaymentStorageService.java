@@ -1,85 +1,279 @@
 package br.dev.felipeschirmann.rinha.service;
 
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
 import br.dev.felipeschirmann.rinha.model.PaymentRequest;
 import br.dev.felipeschirmann.rinha.model.dto.VerificationTask;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
 
 @Service
 public class PaymentStorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentStorageService.class);
-    private static final String QUEUE_KEY = "payments:queue";
-    private static final String VERIFY_QUEUE_KEY = "payments:verify_queue";
+    // Os BRPOP usam timeout finito para que os consumidores percebam a troca de geração do keyspace
+    private static final long TAKE_TIMEOUT_SEC = 1;
 
     private final ListOperations<String, String> listOperations;
     private final ObjectMapper objectMapper;
     private final RedisTemplate<String, String> redisTemplate;
+    private final PaymentJournal journal;
+    private final PaymentKeyspace keyspace;
 
-    public PaymentStorageService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
+    // Fila particionada em shards: payments:{epoch}:queue:{i}
+    private final int shards;
+    // Shards consumidos primeiro por esta instância; os demais só são roubados quando estes esvaziam
+    private final List<Integer> takeOrder;
+    // Quantos shards do início de takeOrder pertencem a esta instância
+    private final int ownedShards;
+    // Desloca o início do BRPOP a cada chamada, para nenhum shard ficar sempre por último com fila acumulada
+    private final AtomicInteger takeRotation = new AtomicInteger();
+    private volatile QueueKeys queueKeys;
+
+    // Chaves da fila pré-calculadas para uma geração do keyspace
+    private record QueueKeys(long epoch, byte[][] shards, byte[][] takeOrder) {
+    }
+
+    public PaymentStorageService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper,
+                                 PaymentJournal journal, PaymentKeyspace keyspace, RinhaProperties rinhaProperties) {
         this.redisTemplate = redisTemplate;
+        this.journal = journal;
+        this.keyspace = keyspace;
         this.listOperations = redisTemplate.opsForList();
         this.objectMapper = objectMapper;
+        this.shards = rinhaProperties.queue().shards();
+
+        int index = rinhaProperties.instance().index();
+        int count = rinhaProperties.instance().count();
+        List<Integer> owned = new ArrayList<>();
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            (i % count == index ? owned : others).add(i);
+        }
+        this.ownedShards = owned.size();
+        owned.addAll(others);
+        this.takeOrder = owned;
+        logger.info("Fila particionada em {} shards. Ordem de consumo desta instância: {}", shards, takeOrder);
+    }
+
+    /**
+     * Distribui os pagamentos entre os shards pelo CRC32 do correlationId.
+     * É o mesmo cálculo feito pelo enqueue_payment.lua (ngx.crc32_long), sempre sobre o id em minúsculas.
+     */
+    public static int shardOf(String correlationId, int shards) {
+        CRC32 crc = new CRC32();
+        crc.update(correlationId.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards);
+    }
+
+    private QueueKeys queueKeys() {
+        long epoch = keyspace.epoch();
+        QueueKeys current = this.queueKeys;
+        if (current != null && current.epoch() == epoch) {
+            return current;
+        }
+        byte[][] shardKeys = new byte[shards][];
+        for (int i = 0; i < shards; i++) {
+            shardKeys[i] = keyspace.queueKey(epoch, i).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] ordered = takeOrder.stream().map(i -> shardKeys[i]).toArray(byte[][]::new);
+        current = new QueueKeys(epoch, shardKeys, ordered);
+        this.queueKeys = current;
+        return current;
     }
 
     public void recordPayment(PaymentRequest paymentRequest) {
         try {
-            String jsonPayment = objectMapper.writeValueAsString(paymentRequest);
-            listOperations.leftPush(QUEUE_KEY, jsonPayment);
+            byte[] key = queueKeys().shards()[shardOf(paymentRequest.correlationId().toString(), shards)];
+            byte[] jsonPayment = objectMapper.writeValueAsBytes(paymentRequest);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.listCommands().lPush(key, jsonPayment));
+            journal.accepted(paymentRequest);
         } catch (Exception e) {
             logger.error("Falha ao enfileirar pagamento no Redis", e);
         }
     }
 
-    public PaymentRequest takePayment() throws InterruptedException {
+    /**
+     * Enfileira o corpo recebido exatamente como chegou, como faz o enqueue_payment.lua.
+     * O corpo só é desserializado quando o journal está ligado.
+     */
+    public void recordRawPayment(String correlationId, byte[] body) {
+        try {
+            byte[] key = queueKeys().shards()[shardOf(correlationId, shards)];
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.listCommands().lPush(key, body));
+            if (journal.isEnabled()) {
+                journal.accepted(objectMapper.readValue(body, PaymentRequest.class));
+            }
+        } catch (Exception e) {
+            logger.error("Falha ao enfileirar pagamento no Redis", e);
+        }
+    }
+
+    /**
+     * Enfileira um lote de corpos já validados: um LPUSH com vários valores por shard, todos no mesmo pipeline.
+     * @return false se o Redis recusou o lote (nenhum pagamento deve ser considerado aceito).
+     */
+    public boolean recordRawPayments(List<String> correlationIds, List<byte[]> bodies) {
+        byte[][] shardKeys = queueKeys().shards();
+        List<List<byte[]>> byShard = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < bodies.size(); i++) {
+            byShard.get(shardOf(correlationIds.get(i), shards)).add(bodies.get(i));
+        }
         try {
-            String jsonPayment = listOperations.rightPop(QUEUE_KEY, 0, TimeUnit.SECONDS);
-            if (jsonPayment != null) {
-                return objectMapper.readValue(jsonPayment, PaymentRequest.class);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 0; i < shards; i++) {
+                    if (!byShard.get(i).isEmpty()) {
+                        connection.listCommands().lPush(shardKeys[i], byShard.get(i).toArray(byte[][]::new));
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Falha ao enfileirar lote de {} pagamentos no Redis", bodies.size(), e);
+            return false;
+        }
+        if (journal.isEnabled()) {
+            for (byte[] body : bodies) {
+                try {
+                    journal.accepted(objectMapper.readValue(body, PaymentRequest.class));
+                } catch (Exception e) {
+                    logger.error("Falha ao registrar pagamento do lote no journal", e);
+                }
             }
+        }
+        return true;
+    }
+
+    public PaymentRequest takePayment() throws InterruptedException {
+        List<byte[]> popped;
+        try {
+            // BRPOP com várias chaves respeita a ordem: só rouba de outro shard quando os próprios estão vazios
+            byte[][] keys = rotatedTakeOrder(queueKeys().takeOrder());
+            popped = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                    connection.listCommands().bRPop((int) TAKE_TIMEOUT_SEC, keys));
         } catch (Exception e) {
             logger.error("Falha ao obter pagamento da fila do Redis", e);
             Thread.sleep(1000); // Pausa antes de tentar de novo
+            return null;
+        }
+        if (popped == null || popped.size() != 2) {
+            return null;
+        }
+        try {
+            // Todos os caminhos de ingestão já registram o aceite no journal ao enfileirar (o OpenResty no ingest.log)
+            return objectMapper.readValue(popped.get(1), PaymentRequest.class);
+        } catch (IOException e) {
+            // Problema da mensagem, não do Redis: descarta e segue sem pausar o despachante
+            logger.error("Pagamento malformado descartado da fila: {}", new String(popped.get(1), StandardCharsets.UTF_8), e);
+            return null;
         }
-        return null;
+    }
+
+    // Gira os shards próprios e, depois deles, os roubados, cada grupo com o mesmo deslocamento
+    private byte[][] rotatedTakeOrder(byte[][] order) {
+        int offset = takeRotation.getAndIncrement() & Integer.MAX_VALUE;
+        byte[][] rotated = new byte[order.length][];
+        int stolen = order.length - ownedShards;
+        for (int i = 0; i < ownedShards; i++) {
+            rotated[i] = order[(i + offset) % ownedShards];
+        }
+        for (int i = 0; i < stolen; i++) {
+            rotated[ownedShards + i] = order[ownedShards + (i + offset) % stolen];
+        }
+        return rotated;
     }
 
     public void enqueueForVerification(VerificationTask task) {
         try {
             String jsonTask = objectMapper.writeValueAsString(task);
-            listOperations.leftPush(VERIFY_QUEUE_KEY, jsonTask);
+            listOperations.leftPush(keyspace.verifyQueueKey(), jsonTask);
         } catch (Exception e) {
             logger.error("Falha ao enfileirar tarefa de VERIFICAÇÃO no Redis", e);
         }
     }
 
+    /**
+     * Devolve ao Redis, num único pipeline, o trabalho que esta instância tirou das filas e não concluiu.
+     * Usa RPUSH: como os consumidores fazem BRPOP, os itens devolvidos são os próximos a serem retirados.
+     */
+    public int handBack(List<PaymentRequest> payments, List<VerificationTask> tasks) {
+        if (payments.isEmpty() && tasks.isEmpty()) {
+            return 0;
+        }
+        try {
+            byte[][] shardKeys = queueKeys().shards();
+            byte[] verifyKey = keyspace.verifyQueueKey().getBytes(StandardCharsets.UTF_8);
+            List<byte[][]> entries = new ArrayList<>(payments.size() + tasks.size());
+            for (PaymentRequest payment : payments) {
+                entries.add(new byte[][]{shardKeys[shardOf(payment.correlationId().toString(), shards)], objectMapper.writeValueAsBytes(payment)});
+            }
+            for (VerificationTask task : tasks) {
+                entries.add(new byte[][]{verifyKey, objectMapper.writeValueAsBytes(task)});
+            }
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[][] entry : entries) {
+                    connection.listCommands().rPush(entry[0], entry[1]);
+                }
+                return null;
+            });
+            return entries.size();
+        } catch (Exception e) {
+            logger.error("Falha ao devolver {} pagamentos e {} verificações ao Redis", payments.size(), tasks.size(), e);
+            return 0;
+        }
+    }
+
+    // Soma a profundidade de todos os shards em um único round trip (pipeline)
     public Long getQueueSize() {
-        Long size = listOperations.size(QUEUE_KEY);
-        return size != null ? size : 0L;
+        byte[][] keys = queueKeys().shards();
+        List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] key : keys) {
+                connection.listCommands().lLen(key);
+            }
+            return null;
+        });
+        long total = 0;
+        for (Object size : sizes) {
+            if (size instanceof Long value) {
+                total += value;
+            }
+        }
+        return total;
     }
 
     public VerificationTask takeForVerification() throws InterruptedException {
+        String jsonTask;
         try {
-            String jsonTask = listOperations.rightPop(VERIFY_QUEUE_KEY, 0, TimeUnit.SECONDS);
-            if (jsonTask != null) {
-                return objectMapper.readValue(jsonTask, VerificationTask.class);
-            }
+            jsonTask = listOperations.rightPop(keyspace.verifyQueueKey(), TAKE_TIMEOUT_SEC, TimeUnit.SECONDS);
         } catch (Exception e) {
             logger.error("Falha ao obter tarefa de verificação da fila do Redis", e);
             Thread.sleep(1000); // Pausa antes de tentar de novo
+            return null;
+        }
+        if (jsonTask == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(jsonTask, VerificationTask.class);
+        } catch (IOException e) {
+            logger.error("Tarefa de verificação malformada descartada da fila: {}", jsonTask, e);
+            return null;
         }
-        return null;
-    }
-
-    public void purgePayments() {
-        redisTemplate.delete(Arrays.asList(QUEUE_KEY, VERIFY_QUEUE_KEY));
-        logger.info("Filas de pagamentos no Redis foram limpas.");
     }
 }
\ No newline at end of file
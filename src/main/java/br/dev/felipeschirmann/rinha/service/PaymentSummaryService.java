@@ -1,55 +1,264 @@
 package br.dev.felipeschirmann.rinha.service;
 
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
 import br.dev.felipeschirmann.rinha.model.PaymentSummaryResponse;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Sumário dos pagamentos liquidados, com write-behind: cada instância acumula as escritas e as envia em pipeline.
+ *
+ * Para o sumário ser exato com várias instâncias, quem atende GET /payments-summary descarrega o próprio buffer
+ * e publica um pedido de flush em summary:flush. As demais descarregam os seus e respondem no mesmo canal;
+ * a leitura espera as rinha.instance.count - 1 confirmações por no máximo clusterFlushTimeoutMs. Se alguma
+ * instância não confirmar a tempo, o sumário pode ficar sem até redisBatchPeriodMs de escritas dela.
+ */
 @Service
-public class PaymentSummaryService {
+public class PaymentSummaryService implements MessageListener {
     private static final Logger logger = LoggerFactory.getLogger(PaymentSummaryService.class);
-    private static final String KEY_DEFAULT = "payments:default";
-    private static final String KEY_FALLBACK = "payments:fallback";
+    // Mensagens "req:{id}:{instância}" e "ack:{id}:{instância}"
+    private static final String FLUSH_CHANNEL = "summary:flush";
 
     private final ZSetOperations<String, String> zSetOperations;
     private final RedisTemplate<String, String> redisTemplate;
+    private final RinhaProperties rinhaProperties;
+    private final PaymentKeyspace keyspace;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final String instanceId;
+    private final int instanceCount;
+    private final long clusterFlushTimeoutMs;
+    // Pedidos de flush deste nó ainda esperando confirmações, por id
+    private final Map<String, CountDownLatch> pendingFlushAcks = new ConcurrentHashMap<>();
 
-    public PaymentSummaryService(RedisTemplate<String, String> redisTemplate) {
+    // Write-behind: as escritas ficam num buffer sem lock e são enviadas em pipeline
+    private record PendingWrite(long epoch, String key, String member, double score) {
+    }
+
+    private final ConcurrentLinkedQueue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Serializa apenas os flushes; quem lê o sumário espera o flush em andamento terminar
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final int batchMaxSize;
+
+    // Agregação no servidor: o SHA1 do script é calculado uma vez e as chamadas usam EVALSHA
+    // (o Spring recorre ao EVAL apenas se o Redis ainda não conhecer o script)
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> AGGREGATE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        AGGREGATE_SCRIPT.setLocation(new ClassPathResource("scripts/summary_aggregate.lua"));
+        AGGREGATE_SCRIPT.setResultType(List.class);
+    }
+
+    private final RinhaProperties.Summary.Aggregation aggregation;
+
+    public PaymentSummaryService(RedisTemplate<String, String> redisTemplate, RinhaProperties rinhaProperties, PaymentKeyspace keyspace,
+                                 RedisMessageListenerContainer listenerContainer) {
         this.redisTemplate = redisTemplate;
+        this.keyspace = keyspace;
+        this.listenerContainer = listenerContainer;
+        this.instanceId = rinhaProperties.instance().id();
+        this.instanceCount = rinhaProperties.instance().count();
+        this.clusterFlushTimeoutMs = rinhaProperties.summary().clusterFlushTimeoutMs();
         this.zSetOperations = redisTemplate.opsForZSet();
+        this.rinhaProperties = rinhaProperties;
+        this.batchMaxSize = rinhaProperties.scheduler().redisBatchMaxSize();
+        this.aggregation = rinhaProperties.summary().aggregation();
+    }
+
+    @PostConstruct
+    public void startFlusher() {
+        int period = rinhaProperties.scheduler().redisBatchPeriodMs();
+        logger.info("Write-behind do sumário: flush a cada {} ms ou {} escritas. Agregação: {}.", period, batchMaxSize, aggregation);
+        flushScheduler.scheduleAtFixedRate(this::flush, period, period, TimeUnit.MILLISECONDS);
+        listenerContainer.addMessageListener(this, new ChannelTopic(FLUSH_CHANNEL));
     }
 
-    // A ESCRITA AGORA É DIRETA E IMEDIATA
     public void recordSuccessfulDefaultPayment(BigDecimal amount, Instant requestedAt) {
-        // Sem buffer, sem agendador. Escrevemos diretamente no Redis.
-        zSetOperations.add(KEY_DEFAULT, amount.toString() + ":" + UUID.randomUUID(), requestedAt.toEpochMilli());
+        bufferWrite(ProcessorType.DEFAULT, amount, requestedAt);
     }
 
     public void recordSuccessfulFallbackPayment(BigDecimal amount, Instant requestedAt) {
-        zSetOperations.add(KEY_FALLBACK, amount.toString() + ":" + UUID.randomUUID(), requestedAt.toEpochMilli());
+        bufferWrite(ProcessorType.FALLBACK, amount, requestedAt);
+    }
+
+    private void bufferWrite(ProcessorType type, BigDecimal amount, Instant requestedAt) {
+        // A chave é resolvida na hora do registro: o pagamento pertence à geração em que foi liquidado
+        long epoch = keyspace.epoch();
+        pendingWrites.offer(new PendingWrite(epoch, keyspace.summaryKey(epoch, type), amount.toString() + ":" + UUID.randomUUID(), requestedAt.toEpochMilli()));
+        // Lote cheio: quem chegou primeiro faz o flush; os demais seguem sem esperar
+        if (pendingCount.incrementAndGet() >= batchMaxSize && flushLock.tryLock()) {
+            try {
+                flushPending();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Envia ao Redis, em um único pipeline, todas as escritas pendentes.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushPending();
+        } catch (Exception e) {
+            logger.error("Erro inesperado no flush do sumário", e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushPending() {
+        List<PendingWrite> batch = new ArrayList<>();
+        int drained = 0;
+        long epoch = keyspace.epoch();
+        PendingWrite write;
+        while ((write = pendingWrites.poll()) != null) {
+            drained++;
+            // Escritas de uma geração já purgada são descartadas para não recriar chaves antigas
+            if (write.epoch() == epoch) {
+                batch.add(write);
+            }
+        }
+        pendingCount.addAndGet(-drained);
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (PendingWrite pending : batch) {
+                    connection.zSetCommands().zAdd(
+                            pending.key().getBytes(StandardCharsets.UTF_8),
+                            pending.score(),
+                            pending.member().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // Devolve o lote ao buffer para não perder pagamentos já processados
+            logger.error("Falha ao gravar lote de {} pagamentos no sumário. Tentaremos novamente.", batch.size(), e);
+            pendingWrites.addAll(batch);
+            pendingCount.addAndGet(batch.size());
+        }
+    }
+
+    /**
+     * Descarrega o buffer desta instância e espera, por tempo limitado, que as demais descarreguem os seus.
+     */
+    public void flushCluster() {
+        flush();
+        if (instanceCount <= 1) {
+            return;
+        }
+        String requestId = UUID.randomUUID().toString();
+        CountDownLatch acks = new CountDownLatch(instanceCount - 1);
+        pendingFlushAcks.put(requestId, acks);
+        try {
+            redisTemplate.convertAndSend(FLUSH_CHANNEL, "req:" + requestId + ":" + instanceId);
+            if (!acks.await(clusterFlushTimeoutMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("Flush do sumário: {} instância(s) não confirmaram em {} ms; o sumário pode sair sem as escritas pendentes delas.",
+                        acks.getCount(), clusterFlushTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Falha ao pedir o flush do sumário às outras instâncias", e);
+        } finally {
+            pendingFlushAcks.remove(requestId);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 3);
+        if (parts.length != 3 || instanceId.equals(parts[2])) {
+            return;
+        }
+        try {
+            if (parts[0].equals("req")) {
+                flush();
+                redisTemplate.convertAndSend(FLUSH_CHANNEL, "ack:" + parts[1] + ":" + instanceId);
+            } else if (parts[0].equals("ack")) {
+                CountDownLatch acks = pendingFlushAcks.get(parts[1]);
+                if (acks != null) {
+                    acks.countDown();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao processar pedido de flush do sumário", e);
+        }
     }
 
     public Mono<PaymentSummaryResponse> getSummary(Optional<Instant> from, Optional<Instant> to) {
-        // A lógica de leitura não precisa mais esvaziar um buffer. Ela apenas lê.
+        // Descarrega os buffers de todas as instâncias antes de ler para que o sumário seja exato
         return Mono.fromCallable(() -> {
-                    var defaultSummary = calculateSummaryFor(KEY_DEFAULT, from, to);
-                    var fallbackSummary = calculateSummaryFor(KEY_FALLBACK, from, to);
+                    flushCluster();
+                    if (aggregation == RinhaProperties.Summary.Aggregation.LUA) {
+                        return aggregateInRedis(from, to);
+                    }
+                    var defaultSummary = calculateSummaryFor(keyspace.summaryKey(ProcessorType.DEFAULT), from, to);
+                    var fallbackSummary = calculateSummaryFor(keyspace.summaryKey(ProcessorType.FALLBACK), from, to);
                     return new PaymentSummaryResponse(defaultSummary, fallbackSummary);
                 })
                 .subscribeOn(Schedulers.boundedElastic());
     }
 
+    // Uma única chamada devolve [qtd, centavos] de cada chave; nenhum membro trafega pela rede
+    private PaymentSummaryResponse aggregateInRedis(Optional<Instant> from, Optional<Instant> to) {
+        String start = from.map(instant -> String.valueOf(instant.toEpochMilli())).orElse("-inf");
+        String end = to.map(instant -> String.valueOf(instant.toEpochMilli())).orElse("+inf");
+
+        List<String> keys = List.of(keyspace.summaryKey(ProcessorType.DEFAULT), keyspace.summaryKey(ProcessorType.FALLBACK));
+        List<?> result = redisTemplate.execute(AGGREGATE_SCRIPT, keys, start, end);
+        if (result == null || result.size() < 4) {
+            throw new IllegalStateException("Resposta inesperada do script de agregação: " + result);
+        }
+        return new PaymentSummaryResponse(toSummary(result.get(0), result.get(1)), toSummary(result.get(2), result.get(3)));
+    }
+
+    private static PaymentSummaryResponse.Summary toSummary(Object count, Object cents) {
+        return new PaymentSummaryResponse.Summary(
+                Long.parseLong(count.toString()),
+                BigDecimal.valueOf(Long.parseLong(cents.toString()), 2));
+    }
+
     private PaymentSummaryResponse.Summary calculateSummaryFor(String key, Optional<Instant> from, Optional<Instant> to) {
         long start = from.map(Instant::toEpochMilli).orElse(Long.MIN_VALUE);
         long end = to.map(Instant::toEpochMilli).orElse(Long.MAX_VALUE);
@@ -68,8 +277,10 @@ public class PaymentSummaryService {
         return new PaymentSummaryResponse.Summary(totalRequests, totalAmount);
     }
 
-    public void purgePayments() {
-        // A limpeza do Redis continua a mesma
-        redisTemplate.delete(Arrays.asList(KEY_DEFAULT, KEY_FALLBACK));
+    @PreDestroy
+    public void shutdown() {
+        flushScheduler.shutdown();
+        flush();
+        logger.info("Buffer do sumário descarregado no desligamento.");
     }
 }
\ No newline at end of file
@@ -0,0 +1,286 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contabiliza os comandos Redis por pagamento, para perceber round trips a mais antes que a vazão caia.
+ *
+ * O RedisTemplate recebe uma fábrica de conexões instrumentada ({@link #wrap}): cada comando é contado e
+ * cronometrado por operação. Os comandos feitos dentro de um {@link Scope} (aberto no BRPOP que retira o
+ * pagamento e fechado quando ele termina) são atribuídos ao resultado do pagamento (settled, requeued...);
+ * os demais (flush do sumário, health check, BRPOPs vazios) vão para "background".
+ * Comandos em pipeline contam como comandos, mas só o fechamento do pipeline conta como round trip.
+ */
+@Service
+public class RedisCommandBudget {
+
+    public static final String PAYMENT = "payment";
+    public static final String VERIFICATION = "verification";
+    private static final String BACKGROUND = "background";
+    // Fechamento de pipeline: conta como round trip, não como comando
+    private static final String PIPELINE = "pipeline";
+    // Métodos da conexão que não vão ao Redis (ou cujo custo é contado em outro lugar)
+    private static final Set<String> UNCOUNTED = Set.of("close", "isClosed", "getNativeConnection", "isQueueing",
+            "isPipelined", "openPipeline", "getSentinelConnection", "isSubscribed", "getSubscription",
+            "toString", "hashCode", "equals");
+
+    private final boolean enabled;
+    private final double maxCommandsPerPayment;
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<Scope> current = new ThreadLocal<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Comandos de uma unidade de trabalho (um pagamento ou uma verificação), acumulados até o resultado ser conhecido.
+     */
+    public static final class Scope {
+        private final String kind;
+        private final Map<String, long[]> operations = new HashMap<>();
+        private String outcome = "unknown";
+        private long roundTrips;
+
+        private Scope(String kind) {
+            this.kind = kind;
+        }
+    }
+
+    // Agregado por tipo e resultado: unidades, comandos, round trips e, por operação, contagem e tempo
+    private static final class Stats {
+        private final LongAdder units = new LongAdder();
+        private final LongAdder commands = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final Map<String, LongAdder[]> operations = new ConcurrentHashMap<>();
+
+        void record(String operation, long count, long nanos) {
+            LongAdder[] op = operations.computeIfAbsent(operation, k -> new LongAdder[]{new LongAdder(), new LongAdder()});
+            op[0].add(count);
+            op[1].add(nanos);
+            if (!operation.equals(PIPELINE)) {
+                commands.add(count);
+            }
+        }
+    }
+
+    public RedisCommandBudget(RinhaProperties rinhaProperties, MeterRegistry meterRegistry) {
+        this.enabled = rinhaProperties.redisBudget().enabled();
+        this.maxCommandsPerPayment = rinhaProperties.redisBudget().maxCommandsPerPayment();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public RedisConnectionFactory wrap(RedisConnectionFactory factory) {
+        if (!enabled) {
+            return factory;
+        }
+        return (RedisConnectionFactory) Proxy.newProxyInstance(RedisConnectionFactory.class.getClassLoader(),
+                new Class<?>[]{RedisConnectionFactory.class}, (proxy, method, args) -> {
+                    Object result = invoke(factory, method, args);
+                    return result instanceof RedisConnection connection && method.getName().equals("getConnection")
+                            ? proxy(RedisConnection.class, connection, connection)
+                            : result;
+                });
+    }
+
+    // --- Escopos por pagamento ---
+
+    public Scope begin(String kind) {
+        if (!enabled) {
+            return null;
+        }
+        Scope scope = new Scope(kind);
+        current.set(scope);
+        return scope;
+    }
+
+    // Continua o escopo em outra thread (o BRPOP roda no despachante, o processamento numa virtual thread própria)
+    public void attach(Scope scope) {
+        if (scope != null) {
+            current.set(scope);
+        }
+    }
+
+    public void detach() {
+        if (enabled) {
+            current.remove();
+        }
+    }
+
+    // Resultado do pagamento em andamento nesta thread; o último a ser marcado prevalece
+    public void mark(String outcome) {
+        if (enabled) {
+            Scope scope = current.get();
+            if (scope != null) {
+                scope.outcome = outcome;
+            }
+        }
+    }
+
+    public void end(Scope scope) {
+        if (scope == null) {
+            return;
+        }
+        current.remove();
+        close(scope, scope.kind + ":" + scope.outcome, true);
+    }
+
+    // O escopo não virou trabalho (BRPOP sem retorno): os comandos vão para background
+    public void discard(Scope scope) {
+        if (scope == null) {
+            return;
+        }
+        current.remove();
+        close(scope, BACKGROUND, false);
+    }
+
+    private void close(Scope scope, String key, boolean countUnit) {
+        Stats target = stats.computeIfAbsent(key, k -> new Stats());
+        if (countUnit) {
+            target.units.increment();
+        }
+        target.roundTrips.add(scope.roundTrips);
+        String[] parts = key.split(":");
+        String kind = parts[0];
+        String outcome = parts.length > 1 ? parts[1] : BACKGROUND;
+        scope.operations.forEach((operation, op) -> {
+            target.record(operation, op[0], op[1]);
+            Timer timer = timer(operation, kind, outcome);
+            for (long i = 0; i < op[0]; i++) {
+                timer.record(op[1] / op[0], TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    private void recordCommand(String operation, long nanos, boolean roundTrip) {
+        Scope scope = current.get();
+        if (scope != null) {
+            long[] op = scope.operations.computeIfAbsent(operation, k -> new long[2]);
+            op[0]++;
+            op[1] += nanos;
+            if (roundTrip) {
+                scope.roundTrips++;
+            }
+            return;
+        }
+        Stats background = stats.computeIfAbsent(BACKGROUND, k -> new Stats());
+        background.record(operation, 1, nanos);
+        if (roundTrip) {
+            background.roundTrips.increment();
+        }
+        timer(operation, BACKGROUND, BACKGROUND).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String operation, String kind, String outcome) {
+        return timers.computeIfAbsent(operation + "|" + kind + "|" + outcome, k -> Timer.builder("rinha.redis.commands")
+                .description("Comandos Redis por operação e por resultado do pagamento")
+                .tags("operation", operation, "kind", kind, "outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    // --- Relatório (actuator) ---
+
+    public Map<String, Object> report() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        long paymentUnits = 0;
+        long paymentCommands = 0;
+        long backgroundCommands = 0;
+        Map<String, Object> byOutcome = new TreeMap<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            long units = s.units.sum();
+            long commands = s.commands.sum();
+            if (entry.getKey().startsWith(PAYMENT + ":")) {
+                paymentUnits += units;
+                paymentCommands += commands;
+            } else if (entry.getKey().equals(BACKGROUND)) {
+                backgroundCommands += commands;
+            }
+            Map<String, Object> operations = new TreeMap<>();
+            s.operations.forEach((operation, op) -> {
+                long count = op[0].sum();
+                operations.put(operation, Map.of("count", count,
+                        "meanMs", count == 0 ? 0.0 : op[1].sum() / 1_000_000.0 / count));
+            });
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("units", units);
+            view.put("commands", commands);
+            view.put("roundTrips", s.roundTrips.sum());
+            view.put("commandsPerUnit", units == 0 ? 0.0 : (double) commands / units);
+            view.put("operations", operations);
+            byOutcome.put(entry.getKey(), view);
+        }
+        double perPayment = paymentUnits == 0 ? 0.0 : (double) paymentCommands / paymentUnits;
+        report.put("enabled", enabled);
+        report.put("payments", paymentUnits);
+        report.put("commandsPerPayment", perPayment);
+        // Inclui o trabalho de fundo (flush do sumário, health check) rateado pelos pagamentos
+        report.put("commandsPerPaymentWithBackground", paymentUnits == 0 ? 0.0 : (double) (paymentCommands + backgroundCommands) / paymentUnits);
+        report.put("maxCommandsPerPayment", maxCommandsPerPayment);
+        report.put("withinBudget", perPayment <= maxCommandsPerPayment);
+        report.put("byOutcome", byOutcome);
+        return report;
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    // --- Proxies ---
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, T target, RedisConnection connection) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            // connection.listCommands(), hashCommands()...: instrumenta também a interface devolvida
+            if (name.endsWith("Commands") && method.getParameterCount() == 0 && method.getReturnType().isInterface()) {
+                Object commands = invoke(target, method, args);
+                return commands == null ? null : proxy((Class<Object>) method.getReturnType(), commands, connection);
+            }
+            if (UNCOUNTED.contains(name)) {
+                return invoke(target, method, args);
+            }
+            boolean pipelined = connection.isPipelined();
+            long start = System.nanoTime();
+            try {
+                return invoke(target, method, args);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                if (name.equals("closePipeline")) {
+                    recordCommand(PIPELINE, nanos, true);
+                } else {
+                    recordCommand(name.toLowerCase(), nanos, !pipelined);
+                }
+            }
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
\ No newline at end of file
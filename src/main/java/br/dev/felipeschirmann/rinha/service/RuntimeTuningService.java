@@ -0,0 +1,271 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.ProcessorBreakers;
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.BreakerTuning;
+import br.dev.felipeschirmann.rinha.model.dto.TuningRecord;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ajuste em tempo de execução dos parâmetros de roteamento e dos circuit breakers, igual em todas as instâncias.
+ *
+ * A configuração vale por versão: tuning:version é o contador, tuning:current guarda a versão atual (JSON)
+ * e tuning:audit as últimas {@link #AUDIT_SIZE}. Uma atualização só é gravada se ninguém gravou outra desde a
+ * versão que esta instância conhece (compare-and-set num script Lua); depois é publicada em tuning:changed.
+ * Quem recebe o aviso relê tuning:current. Como Pub/Sub não é durável, uma leitura periódica cobre avisos
+ * perdidos e instâncias que sobem depois.
+ */
+@Service
+public class RuntimeTuningService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RuntimeTuningService.class);
+    private static final String VERSION_KEY = "tuning:version";
+    private static final String CURRENT_KEY = "tuning:current";
+    private static final String AUDIT_KEY = "tuning:audit";
+    private static final String CHANNEL = "tuning:changed";
+    private static final int AUDIT_SIZE = 100;
+    private static final long RESYNC_PERIOD_MS = 5000;
+
+    // Grava a nova versão só se ninguém passou da esperada (ARGV[1]); devolve 0 em caso de conflito.
+    // Uma versão menor que a esperada indica que o Redis foi reiniciado, e a gravação segue normalmente
+    private static final DefaultRedisScript<Long> COMPARE_AND_SET = new DefaultRedisScript<>("""
+            local current = tonumber(redis.call('GET', KEYS[1]) or '0')
+            if current > tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('SET', KEYS[1], ARGV[2])
+            redis.call('SET', KEYS[2], ARGV[3])
+            redis.call('LPUSH', KEYS[3], ARGV[3])
+            redis.call('LTRIM', KEYS[3], 0, tonumber(ARGV[4]) - 1)
+            redis.call('PUBLISH', ARGV[5], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final ProcessorBreakers processorBreakers;
+    private final String instanceId;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Consumer<TuningValues>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile TuningRecord current;
+
+    /**
+     * Atualização recusada: valores fora dos limites ou outra instância gravou uma versão no meio do caminho.
+     */
+    public static class TuningRejectedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        // A mensagem já leva os erros; a lista só serve à resposta HTTP e não viaja na serialização
+        private final transient List<String> errors;
+        private final boolean conflict;
+
+        TuningRejectedException(List<String> errors, boolean conflict) {
+            super(String.join("; ", errors));
+            this.errors = List.copyOf(errors);
+            this.conflict = conflict;
+        }
+
+        public List<String> errors() {
+            return errors;
+        }
+
+        public boolean isConflict() {
+            return conflict;
+        }
+    }
+
+    public RuntimeTuningService(RedisTemplate<String, String> redisTemplate,
+                                RedisMessageListenerContainer listenerContainer,
+                                ObjectMapper objectMapper,
+                                ProcessorBreakers processorBreakers,
+                                RinhaProperties rinhaProperties) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.processorBreakers = processorBreakers;
+        this.instanceId = rinhaProperties.instance().id();
+        // Versão 0: a configuração de arranque (application.properties), enquanto ninguém ajustou nada
+        TuningValues initial = new TuningValues(
+                rinhaProperties.queue().fallbackTriggerSize(),
+                rinhaProperties.processor().failureThreshold(),
+                rinhaProperties.processor().healthDataMaxAgeMs(),
+                rinhaProperties.scheduler().strategyDecisionPeriodMs(),
+                rinhaProperties.routing().targetDrainMs(),
+                processorBreakers.tuning(ProcessorType.DEFAULT),
+                processorBreakers.tuning(ProcessorType.FALLBACK));
+        this.current = new TuningRecord(0, Instant.now(), instanceId, "configuração inicial", initial, null);
+    }
+
+    @PostConstruct
+    public void initialize() {
+        resync();
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        scheduler.scheduleAtFixedRate(this::resync, RESYNC_PERIOD_MS, RESYNC_PERIOD_MS, TimeUnit.MILLISECONDS);
+        logger.info("Tuning em tempo de execução na versão {}.", current.version());
+    }
+
+    public TuningRecord current() {
+        return current;
+    }
+
+    public TuningValues values() {
+        return current.values();
+    }
+
+    /**
+     * Registra um callback para os parâmetros aplicados. É chamado na hora com os valores atuais, já que
+     * uma versão lida do Redis na subida pode ter sido aplicada antes de quem se registra existir.
+     */
+    public void onChange(Consumer<TuningValues> listener) {
+        listeners.add(listener);
+        listener.accept(current.values());
+    }
+
+    /**
+     * Valida, grava a nova versão no Redis, avisa as outras instâncias e aplica localmente.
+     * Campos nulos em {@code changes} mantêm o valor atual.
+     */
+    public TuningRecord update(TuningValues changes, String reason) {
+        TuningRecord base = current;
+        TuningValues merged = base.values().merge(changes);
+        List<String> errors = validate(merged);
+        if (!errors.isEmpty()) {
+            throw new TuningRejectedException(errors, false);
+        }
+        TuningRecord next = new TuningRecord(base.version() + 1, Instant.now(), instanceId, reason, merged, changes);
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(next);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar a configuração de tuning", e);
+        }
+        Long written = redisTemplate.execute(COMPARE_AND_SET, List.of(VERSION_KEY, CURRENT_KEY, AUDIT_KEY),
+                String.valueOf(base.version()), String.valueOf(next.version()), json, String.valueOf(AUDIT_SIZE), CHANNEL);
+        if (written == null || written == 0) {
+            resync();
+            throw new TuningRejectedException(List.of("a configuração mudou para a versão " + current.version()
+                    + " durante o ajuste; releia e tente de novo"), true);
+        }
+        apply(next);
+        return next;
+    }
+
+    public List<TuningRecord> audit(int limit) {
+        List<String> entries = redisTemplate.opsForList().range(AUDIT_KEY, 0, Math.max(1, limit) - 1);
+        List<TuningRecord> records = new ArrayList<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                try {
+                    records.add(objectMapper.readValue(entry, TuningRecord.class));
+                } catch (Exception e) {
+                    logger.warn("Entrada inválida no histórico de tuning", e);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static List<String> validate(TuningValues values) {
+        List<String> errors = new ArrayList<>();
+        check(errors, values.fallbackTriggerSize() >= 0, "fallbackTriggerSize deve ser >= 0");
+        check(errors, values.failureThreshold() >= 1, "failureThreshold deve ser >= 1");
+        check(errors, values.healthDataMaxAgeMs() >= 100, "healthDataMaxAgeMs deve ser >= 100");
+        check(errors, values.strategyDecisionPeriodMs() >= 10 && values.strategyDecisionPeriodMs() <= 60_000,
+                "strategyDecisionPeriodMs deve estar entre 10 e 60000");
+        check(errors, values.targetDrainMs() >= 10 && values.targetDrainMs() <= 600_000,
+                "targetDrainMs deve estar entre 10 e 600000");
+        validateBreaker(errors, "defaultBreaker", values.defaultBreaker());
+        validateBreaker(errors, "fallbackBreaker", values.fallbackBreaker());
+        return errors;
+    }
+
+    private static void validateBreaker(List<String> errors, String prefix, BreakerTuning breaker) {
+        check(errors, breaker.failureRateThreshold() > 0 && breaker.failureRateThreshold() <= 100,
+                prefix + ".failureRateThreshold deve estar em (0, 100]");
+        check(errors, breaker.slidingWindowSize() >= 1, prefix + ".slidingWindowSize deve ser >= 1");
+        check(errors, breaker.minimumNumberOfCalls() >= 1, prefix + ".minimumNumberOfCalls deve ser >= 1");
+        check(errors, breaker.waitDurationInOpenStateMs() >= 1, prefix + ".waitDurationInOpenStateMs deve ser >= 1");
+        check(errors, breaker.permittedNumberOfCallsInHalfOpenState() >= 1,
+                prefix + ".permittedNumberOfCallsInHalfOpenState deve ser >= 1");
+    }
+
+    private static void check(List<String> errors, boolean valid, String message) {
+        if (!valid) {
+            errors.add(message);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        long announced = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (announced > current.version()) {
+            resync();
+        }
+    }
+
+    private void resync() {
+        try {
+            String json = redisTemplate.opsForValue().get(CURRENT_KEY);
+            if (json != null) {
+                apply(objectMapper.readValue(json, TuningRecord.class));
+            }
+        } catch (Exception e) {
+            logger.warn("Falha ao sincronizar a configuração de tuning", e);
+        }
+    }
+
+    // Versões antigas ou repetidas (aviso + leitura periódica) são ignoradas
+    private synchronized void apply(TuningRecord next) {
+        TuningRecord previous = current;
+        if (next.version() <= previous.version()) {
+            return;
+        }
+        if (!Objects.equals(previous.values().defaultBreaker(), next.values().defaultBreaker())) {
+            processorBreakers.reconfigure(ProcessorType.DEFAULT, next.values().defaultBreaker());
+        }
+        if (!Objects.equals(previous.values().fallbackBreaker(), next.values().fallbackBreaker())) {
+            processorBreakers.reconfigure(ProcessorType.FALLBACK, next.values().fallbackBreaker());
+        }
+        current = next;
+        for (Consumer<TuningValues> listener : listeners) {
+            try {
+                listener.accept(next.values());
+            } catch (Exception e) {
+                logger.error("Erro ao aplicar a configuração de tuning", e);
+            }
+        }
+        logger.warn("TUNING: versão {} aplicada (instância {}, motivo: {}). Alterações: {}",
+                next.version(), next.instanceId(), next.reason(), next.changes());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+}
\ No newline at end of file
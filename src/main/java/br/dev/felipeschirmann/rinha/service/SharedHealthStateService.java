@@ -2,51 +2,110 @@ package br.dev.felipeschirmann.rinha.service;
 
 import br.dev.felipeschirmann.rinha.model.ProcessorType;
 import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import br.dev.felipeschirmann.rinha.model.dto.HealthUpdateMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Mantém uma cópia local do estado de saúde dos processadores.
+ * Apenas o líder do health check escreve: o estado é publicado via Pub/Sub e
+ * também gravado no hash do Redis, que serve só para o bootstrap de novas instâncias.
+ * A leitura por pagamento é local e não custa nenhum comando no Redis.
+ */
 @Service
-public class SharedHealthStateService {
+public class SharedHealthStateService implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedHealthStateService.class);
+    public static final String UPDATES_CHANNEL = "health:updates";
 
     private final HashOperations<String, String, String> hashOperations;
+    private final RedisTemplate<String, String> redisTemplate;
     private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Map<ProcessorType, HealthState> localStates = new ConcurrentHashMap<>();
 
-    public SharedHealthStateService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
+    public SharedHealthStateService(RedisTemplate<String, String> redisTemplate,
+                                    ObjectMapper objectMapper,
+                                    RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
         this.hashOperations = redisTemplate.opsForHash();
         this.objectMapper = objectMapper;
+        this.listenerContainer = listenerContainer;
     }
 
-    public HealthState getState(ProcessorType type) {
-        try {
-            String key = "health:state:" + type.name().toLowerCase();
-            Map<String, String> entries = hashOperations.entries(key);
-            if (entries.isEmpty()) {
-                return new HealthState(); // Retorna estado saudável padrão se não existir
+    @PostConstruct
+    public void initialize() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(UPDATES_CHANNEL));
+        for (ProcessorType type : ProcessorType.values()) {
+            HealthState snapshot = readSnapshot(type);
+            if (snapshot != null) {
+                localStates.put(type, snapshot);
             }
-            return new HealthState(
-                    Integer.parseInt(entries.get("failures")),
-                    Instant.parse(entries.get("lastCheckedAt"))
-            );
-        } catch (Exception e) {
-            return new HealthState(); // Em caso de erro, assume estado saudável para não parar o sistema
         }
     }
 
+    public HealthState getState(ProcessorType type) {
+        HealthState state = localStates.get(type);
+        return state != null ? state : new HealthState(); // Estado saudável padrão se ainda não recebemos nada
+    }
+
+    // Usado apenas pelo líder do health check
     public void updateState(ProcessorType type, HealthState state) {
+        localStates.put(type, state);
         try {
-            String key = "health:state:" + type.name().toLowerCase();
             Map<String, String> map = Map.of(
                     "failures", String.valueOf(state.consecutiveFailures()),
-                    "lastCheckedAt", state.lastCheckedAt().toString()
+                    "lastCheckedAt", state.lastCheckedAt().toString(),
+                    "minResponseTime", String.valueOf(state.minResponseTime())
+            );
+            hashOperations.putAll(stateKey(type), map);
+            redisTemplate.convertAndSend(UPDATES_CHANNEL, objectMapper.writeValueAsString(new HealthUpdateMessage(type, state)));
+        } catch (Exception e) {
+            logger.error("Falha ao publicar o estado de saúde do processador {}", type, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            HealthUpdateMessage update = objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), HealthUpdateMessage.class);
+            localStates.put(update.type(), update.state());
+        } catch (Exception e) {
+            logger.error("Mensagem de saúde inválida recebida no canal {}", UPDATES_CHANNEL, e);
+        }
+    }
+
+    private HealthState readSnapshot(ProcessorType type) {
+        try {
+            Map<String, String> entries = hashOperations.entries(stateKey(type));
+            if (entries.isEmpty()) {
+                return null;
+            }
+            return new HealthState(
+                    Integer.parseInt(entries.get("failures")),
+                    Instant.parse(entries.get("lastCheckedAt")),
+                    Integer.parseInt(entries.getOrDefault("minResponseTime", "0"))
             );
-            hashOperations.putAll(key, map);
         } catch (Exception e) {
-            // Logar o erro, mas não travar a aplicação
+            return null; // Em caso de erro, assume estado saudável para não parar o sistema
         }
     }
+
+    private static String stateKey(ProcessorType type) {
+        return "health:state:" + type.name().toLowerCase();
+    }
 }
\ No newline at end of file
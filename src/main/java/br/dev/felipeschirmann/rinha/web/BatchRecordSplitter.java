@@ -0,0 +1,90 @@
+package br.dev.felipeschirmann.rinha.web;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Separa, à medida que os bytes chegam, os objetos JSON de primeiro nível do corpo de POST /payments/batch.
+ * Aceita NDJSON (um objeto por linha) e array JSON: colchetes, vírgulas e espaços entre objetos são ignorados.
+ * Só conta chaves fora de strings, então não precisa montar árvore nem conhecer o conteúdo dos objetos.
+ *
+ * Registros inválidos (lixo fora de um objeto, objeto maior que maxRecordBytes ou cortado no fim do corpo)
+ * saem como {@link #INVALID}, para que a resposta mantenha a posição de cada registro.
+ * Uma instância atende um único corpo e não é thread-safe.
+ */
+final class BatchRecordSplitter {
+
+    static final byte[] INVALID = new byte[0];
+
+    private final int maxRecordBytes;
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream(128);
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean overflow;
+    private boolean inStray;
+
+    BatchRecordSplitter(int maxRecordBytes) {
+        this.maxRecordBytes = maxRecordBytes;
+    }
+
+    List<byte[]> feed(byte[] bytes) {
+        List<byte[]> records = new ArrayList<>();
+        for (byte b : bytes) {
+            if (depth == 0) {
+                if (b == '{') {
+                    if (inStray) {
+                        records.add(INVALID);
+                        inStray = false;
+                    }
+                    current.reset();
+                    current.write(b);
+                    overflow = false;
+                    depth = 1;
+                } else if (isSeparator(b)) {
+                    if (inStray) {
+                        records.add(INVALID);
+                        inStray = false;
+                    }
+                } else {
+                    inStray = true;
+                }
+                continue;
+            }
+
+            if (!overflow) {
+                if (current.size() >= maxRecordBytes) {
+                    overflow = true;
+                } else {
+                    current.write(b);
+                }
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                records.add(overflow ? INVALID : current.toByteArray());
+            }
+        }
+        return records;
+    }
+
+    // Fim do corpo: um objeto aberto ou lixo pendente vira um último registro inválido
+    List<byte[]> finish() {
+        return depth > 0 || inStray ? List.of(INVALID) : List.of();
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == ',' || b == '[' || b == ']';
+    }
+}
\ No newline at end of file
@@ -1,17 +1,27 @@
 package br.dev.felipeschirmann.rinha.web;
 
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
 import br.dev.felipeschirmann.rinha.model.PaymentRequest;
+import br.dev.felipeschirmann.rinha.model.dto.BatchIngestionResponse;
+import br.dev.felipeschirmann.rinha.service.PaymentKeyspace;
 import br.dev.felipeschirmann.rinha.service.PaymentStorageService;
 import br.dev.felipeschirmann.rinha.service.PaymentSummaryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -20,11 +30,18 @@ public class PaymentHandler {
 
     private final PaymentStorageService storageService;
     private final PaymentSummaryService summaryService;
+    private final PaymentKeyspace keyspace;
+    private final int batchChunkSize;
+    private final int batchMaxRecordBytes;
     private static final Logger logger = LoggerFactory.getLogger(PaymentHandler.class);
 
-    public PaymentHandler(PaymentStorageService storageService, PaymentSummaryService summaryService) {
+    public PaymentHandler(PaymentStorageService storageService, PaymentSummaryService summaryService, PaymentKeyspace keyspace,
+                          RinhaProperties rinhaProperties) {
         this.storageService = storageService;
         this.summaryService = summaryService;
+        this.keyspace = keyspace;
+        this.batchChunkSize = rinhaProperties.ingestion().batchChunkSize();
+        this.batchMaxRecordBytes = rinhaProperties.ingestion().batchMaxRecordBytes();
     }
 
     public Mono<ServerResponse> createPayment(PaymentRequest paymentRequest) {
@@ -32,6 +49,80 @@ public class PaymentHandler {
         return ServerResponse.accepted().build();
     }
 
+    /**
+     * Caminho rápido de ingestão: lê o corpo como DataBuffer, valida direto nos bytes
+     * e enfileira o corpo original, sem criar POJOs (o equivalente Java do enqueue_payment.lua).
+     */
+    public Mono<ServerResponse> createPaymentRaw(ServerRequest request) {
+        return DataBufferUtils.join(request.body(BodyExtractors.toDataBuffers()))
+                .map(PaymentHandler::toBytes)
+                .flatMap(body -> {
+                    String correlationId = PaymentPayloadScanner.scan(body);
+                    if (correlationId == null) {
+                        return ServerResponse.badRequest().build();
+                    }
+                    storageService.recordRawPayment(correlationId, body);
+                    return ServerResponse.accepted().build();
+                })
+                .switchIfEmpty(ServerResponse.badRequest().build());
+    }
+
+    /**
+     * Ingestão em lote: NDJSON ou array JSON, lido em streaming. Cada registro é validado como no caminho rápido
+     * assim que termina de chegar, e os válidos são enfileirados em blocos de batchChunkSize (um pipeline por bloco).
+     * Responde 202 com o status de cada registro, na ordem do corpo.
+     */
+    public Mono<ServerResponse> createPaymentBatch(ServerRequest request) {
+        BatchRecordSplitter splitter = new BatchRecordSplitter(batchMaxRecordBytes);
+        return request.body(BodyExtractors.toDataBuffers())
+                .concatMapIterable(buffer -> splitter.feed(toBytes(buffer)))
+                .concatWith(Flux.defer(() -> Flux.fromIterable(splitter.finish())))
+                .buffer(batchChunkSize)
+                // O LPUSH é bloqueante: cada bloco sai do event loop, e concatMap mantém a ordem dos registros
+                .concatMap(chunk -> Mono.fromCallable(() -> enqueueChunk(chunk)).subscribeOn(Schedulers.boundedElastic()))
+                .collect(ArrayList<String>::new, List::addAll)
+                .flatMap(results -> {
+                    if (results.isEmpty()) {
+                        return ServerResponse.badRequest().build();
+                    }
+                    int accepted = (int) results.stream().filter(BatchIngestionResponse.ACCEPTED::equals).count();
+                    return ServerResponse.accepted()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(new BatchIngestionResponse(accepted, results.size() - accepted, results));
+                });
+    }
+
+    private List<String> enqueueChunk(List<byte[]> chunk) {
+        List<String> results = new ArrayList<>(chunk.size());
+        List<String> correlationIds = new ArrayList<>(chunk.size());
+        List<byte[]> bodies = new ArrayList<>(chunk.size());
+        for (byte[] record : chunk) {
+            String correlationId = record.length == 0 ? null : PaymentPayloadScanner.scan(record);
+            if (correlationId == null) {
+                results.add(BatchIngestionResponse.INVALID);
+            } else {
+                results.add(null); // Definido depois do LPUSH
+                correlationIds.add(correlationId);
+                bodies.add(record);
+            }
+        }
+        String status = bodies.isEmpty() || storageService.recordRawPayments(correlationIds, bodies)
+                ? BatchIngestionResponse.ACCEPTED
+                : BatchIngestionResponse.FAILED;
+        results.replaceAll(result -> result == null ? status : result);
+        return results;
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
     /**
      * Lida com as requisições do sumário.
      * Neste passo, sempre retorna um sumário zerado.
@@ -50,15 +141,17 @@ public class PaymentHandler {
 
     public Mono<ServerResponse> purgePayments(ServerRequest request) {
         logger.warn("Recebida requisição para PURGAR todos os dados de pagamento.");
-        storageService.purgePayments();
-        summaryService.purgePayments();
-
-        Map<String, String> responseBody = Map.of("message", "All payments purged.");
+        // O purge é só a troca de geração do keyspace; a chamada ao Redis sai do event loop
+        return Mono.fromCallable(keyspace::advance)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(epoch -> {
+                    Map<String, String> responseBody = Map.of("message", "All payments purged.");
 
-        // Retorna HTTP 200 OK com o corpo da resposta
-        return ServerResponse.ok()
-                .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(responseBody);
+                    // Retorna HTTP 200 OK com o corpo da resposta
+                    return ServerResponse.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(responseBody);
+                });
     }
 
 }
\ No newline at end of file
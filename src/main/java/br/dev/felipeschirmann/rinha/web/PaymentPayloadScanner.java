@@ -0,0 +1,164 @@
+package br.dev.felipeschirmann.rinha.web;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Validação mínima, direto nos bytes, do corpo de POST /payments.
+ * Confere apenas o que a validação completa (Jackson + Bean Validation) garantiria:
+ * um único objeto JSON bem formado na estrutura (chaves e colchetes balanceados, strings fechadas,
+ * nada depois do '}' final), com um "correlationId" com formato de UUID e um "amount" numérico.
+ * Nenhum objeto é criado além da String do correlationId, usada para escolher o shard da fila.
+ */
+final class PaymentPayloadScanner {
+
+    private static final byte[] CORRELATION_ID_KEY = "\"correlationId\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMOUNT_KEY = "\"amount\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int UUID_LENGTH = 36;
+    // Aninhamento máximo de objetos e arrays aceito na checagem de estrutura
+    private static final int MAX_DEPTH = 64;
+
+    private PaymentPayloadScanner() {
+    }
+
+    /**
+     * @return o correlationId do corpo, ou null se o corpo não passar na validação.
+     */
+    static String scan(byte[] body) {
+        if (!isWellFormed(body)) {
+            return null;
+        }
+        int idStart = valueStart(body, CORRELATION_ID_KEY);
+        if (idStart < 0 || !isQuotedUuid(body, idStart)) {
+            return null;
+        }
+        int amountStart = valueStart(body, AMOUNT_KEY);
+        if (amountStart < 0 || !isNumber(body, amountStart)) {
+            return null;
+        }
+        return new String(body, idStart + 1, UUID_LENGTH, StandardCharsets.US_ASCII);
+    }
+
+    // Estrutura do corpo: um objeto cujos aninhamentos fecham na ordem, fora de strings, e só espaços depois dele.
+    // Não valida a gramática completa (vírgulas, literais), só o que impede o Jackson de chegar ao fim do objeto
+    private static boolean isWellFormed(byte[] body) {
+        int i = skipWhitespace(body, 0);
+        if (i >= body.length || body[i] != '{') {
+            return false;
+        }
+        // Pilha de aninhamento em bits: 1 = objeto, 0 = array
+        long open = 0;
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (; i < body.length; i++) {
+            byte b = body[i];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                } else if (b >= 0 && b < 0x20) {
+                    // Caractere de controle sem escape não é permitido dentro de string JSON
+                    return false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                if (depth == MAX_DEPTH) {
+                    return false;
+                }
+                open = (open << 1) | (b == '{' ? 1 : 0);
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0 || ((open & 1) == 1) != (b == '}')) {
+                    return false;
+                }
+                open >>>= 1;
+                if (--depth == 0) {
+                    return skipWhitespace(body, i + 1) == body.length;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Posição do primeiro byte do valor associado à chave, ou -1
+    private static int valueStart(byte[] body, byte[] key) {
+        int keyAt = indexOf(body, key);
+        if (keyAt < 0) {
+            return -1;
+        }
+        int i = skipWhitespace(body, keyAt + key.length);
+        if (i >= body.length || body[i] != ':') {
+            return -1;
+        }
+        i = skipWhitespace(body, i + 1);
+        return i < body.length ? i : -1;
+    }
+
+    private static boolean isQuotedUuid(byte[] body, int start) {
+        int end = start + UUID_LENGTH + 1;
+        if (end >= body.length || body[start] != '"' || body[end] != '"') {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            byte b = body[start + 1 + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (b != '-') return false;
+            } else if (!isHex(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Número JSON: -?\d+(\.\d+)?([eE][+-]?\d+)?
+    private static boolean isNumber(byte[] body, int i) {
+        if (i < body.length && body[i] == '-') i++;
+        int digits = countDigits(body, i);
+        if (digits == 0) return false;
+        i += digits;
+        if (i < body.length && body[i] == '.') {
+            int fraction = countDigits(body, i + 1);
+            if (fraction == 0) return false;
+            i += 1 + fraction;
+        }
+        if (i < body.length && (body[i] == 'e' || body[i] == 'E')) {
+            i++;
+            if (i < body.length && (body[i] == '+' || body[i] == '-')) i++;
+            int exponent = countDigits(body, i);
+            if (exponent == 0) return false;
+            i += exponent;
+        }
+        i = skipWhitespace(body, i);
+        return i < body.length && (body[i] == ',' || body[i] == '}');
+    }
+
+    private static int countDigits(byte[] body, int from) {
+        int i = from;
+        while (i < body.length && body[i] >= '0' && body[i] <= '9') i++;
+        return i - from;
+    }
+
+    private static boolean isHex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+    }
+
+    private static int skipWhitespace(byte[] body, int i) {
+        while (i < body.length && (body[i] == ' ' || body[i] == '\t' || body[i] == '\n' || body[i] == '\r')) i++;
+        return i;
+    }
+
+    private static int indexOf(byte[] body, byte[] key) {
+        outer:
+        for (int i = 0; i <= body.length - key.length; i++) {
+            for (int j = 0; j < key.length; j++) {
+                if (body[i + j] != key[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
\ No newline at end of file
@@ -1,5 +1,6 @@
 package br.dev.felipeschirmann.rinha.web;
 
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
 import br.dev.felipeschirmann.rinha.model.PaymentRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -7,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.server.HandlerFilterFunction;
+import org.springframework.web.reactive.function.server.HandlerFunction;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
@@ -20,12 +22,27 @@ public class PaymentRouter {
     private static final Logger logger = LoggerFactory.getLogger(PaymentRouter.class);
 
     @Bean
-    public RouterFunction<ServerResponse> paymentRoutes(PaymentHandler paymentHandler, ValidationHandler validationHandler) {
+    public RouterFunction<ServerResponse> paymentRoutes(PaymentHandler paymentHandler,
+                                                        ValidationHandler validationHandler,
+                                                        TuningHandler tuningHandler,
+                                                        RinhaProperties rinhaProperties) {
+        // Caminho rápido (validação nos bytes) ou completo (Jackson + Bean Validation)
+        HandlerFunction<ServerResponse> createPayment = rinhaProperties.ingestion().fastPath()
+                ? paymentHandler::createPaymentRaw
+                : req -> validationHandler.handleRequest(req, PaymentRequest.class, paymentHandler::createPayment);
+
         return route()
-                .POST("/payments", accept(MediaType.APPLICATION_JSON),
-                        req -> validationHandler.handleRequest(req, PaymentRequest.class, paymentHandler::createPayment))
+                // NDJSON ou array JSON; não depende do Content-Type
+                .POST("/payments/batch", paymentHandler::createPaymentBatch)
+                .POST("/payments", accept(MediaType.APPLICATION_JSON), createPayment)
                 .GET("/payments-summary", paymentHandler::getSummary)
                 .POST("/purge-payments", paymentHandler::purgePayments)
+                .add(route()
+                        .GET("/admin/tuning", tuningHandler::getTuning)
+                        .POST("/admin/tuning", tuningHandler::updateTuning)
+                        .GET("/admin/tuning/audit", tuningHandler::getAudit)
+                        .filter(tuningHandler::requireAdminToken)
+                        .build())
                 .build();
 
     }
@@ -0,0 +1,93 @@
+package br.dev.felipeschirmann.rinha.web;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.dto.TuningValues;
+import br.dev.felipeschirmann.rinha.service.RuntimeTuningService;
+import br.dev.felipeschirmann.rinha.service.RuntimeTuningService.TuningRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Administração do tuning em tempo de execução. Qualquer instância atende: a mudança vale para todas.
+ *
+ * GET  /admin/tuning              versão atual
+ * POST /admin/tuning?reason=...   aplica só os campos enviados (400 se inválidos, 409 se outra versão entrou antes)
+ * GET  /admin/tuning/audit?limit= histórico, da mais recente para a mais antiga
+ *
+ * Os endpoints ficam fora do nginx público e exigem o header X-Admin-Token igual a rinha.tuning.admin-token
+ * (401 se não bater). Sem token configurado eles respondem 404, como se não existissem.
+ */
+@Component
+public class TuningHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TuningHandler.class);
+    private static final int DEFAULT_AUDIT_LIMIT = 20;
+    private static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private final RuntimeTuningService tuningService;
+    private final byte[] adminToken;
+
+    public TuningHandler(RuntimeTuningService tuningService, RinhaProperties rinhaProperties) {
+        this.tuningService = tuningService;
+        this.adminToken = rinhaProperties.tuning().adminToken().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Filtro das rotas /admin/tuning (PaymentRouter)
+    public Mono<ServerResponse> requireAdminToken(ServerRequest request, HandlerFunction<ServerResponse> next) {
+        if (adminToken.length == 0) {
+            return ServerResponse.notFound().build();
+        }
+        String presented = request.headers().firstHeader(TOKEN_HEADER);
+        // Comparação em tempo constante, para o tempo de resposta não revelar o prefixo correto
+        if (presented == null || !MessageDigest.isEqual(adminToken, presented.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Acesso negado a {}: {} ausente ou inválido", request.path(), TOKEN_HEADER);
+            return ServerResponse.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return next.handle(request);
+    }
+
+    public Mono<ServerResponse> getTuning(ServerRequest request) {
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(tuningService.current());
+    }
+
+    public Mono<ServerResponse> updateTuning(ServerRequest request) {
+        String reason = request.queryParam("reason").orElse("sem motivo informado");
+        return request.bodyToMono(TuningValues.class)
+                // Escreve no Redis e pode trocar os breakers: fora do event loop
+                .publishOn(Schedulers.boundedElastic())
+                .map(changes -> tuningService.update(changes, reason))
+                .flatMap(record -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(record))
+                .onErrorResume(TuningRejectedException.class, e -> {
+                    logger.warn("Ajuste de tuning recusado: {}", e.getMessage());
+                    return ServerResponse.status(e.isConflict() ? HttpStatus.CONFLICT : HttpStatus.BAD_REQUEST)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Map.of("errors", e.errors()));
+                })
+                .switchIfEmpty(ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> getAudit(ServerRequest request) {
+        int limit = request.queryParam("limit").map(Integer::parseInt).orElse(DEFAULT_AUDIT_LIMIT);
+        return Mono.fromCallable(() -> tuningService.audit(limit))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(records -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(records));
+    }
+}
\ No newline at end of file
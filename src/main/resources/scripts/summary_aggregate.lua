@@ -0,0 +1,33 @@
+-- Agrega o sumário dentro do Redis: percorre o intervalo de cada ZSET e devolve
+-- apenas {quantidade, soma em centavos} por chave, em um único round trip.
+-- KEYS: chaves dos ZSETs da geração atual (payments:{epoch}:default, payments:{epoch}:fallback)
+-- ARGV[1], ARGV[2]: score mínimo e máximo (epoch ms, ou -inf / +inf)
+-- Membros têm o formato "<valor>:<uuid>", ex: "19.90:5f1c..."
+
+local function to_cents(amount)
+    local integer, fraction = string.match(amount, '^(-?%d+)%.?(%d*)$')
+    if not integer then
+        -- Formato inesperado (ex: notação científica): converte via número
+        return math.floor(tonumber(amount) * 100 + 0.5)
+    end
+    fraction = string.sub(fraction .. '00', 1, 2)
+    local cents = tonumber(integer) * 100
+    if string.sub(integer, 1, 1) == '-' then
+        return cents - tonumber(fraction)
+    end
+    return cents + tonumber(fraction)
+end
+
+local result = {}
+for i, key in ipairs(KEYS) do
+    local members = redis.call('ZRANGEBYSCORE', key, ARGV[1], ARGV[2])
+    local cents = 0
+    for _, member in ipairs(members) do
+        local separator = string.find(member, ':', 1, true)
+        cents = cents + to_cents(string.sub(member, 1, separator - 1))
+    end
+    -- Tudo volta como string: a conversão de número Lua para inteiro Redis truncaria valores grandes
+    result[#result + 1] = tostring(#members)
+    result[#result + 1] = string.format('%d', cents)
+end
+return result
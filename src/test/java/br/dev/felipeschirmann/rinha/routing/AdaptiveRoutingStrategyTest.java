@@ -0,0 +1,74 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Padrões do RinhaProperties: failureThreshold 1, dados de health válidos por 4300 ms e desvio com fila acima de 15000.
+ */
+class AdaptiveRoutingStrategyTest {
+
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+    private static final HealthState HEALTHY = new HealthState(0, NOW, 0);
+    private static final HealthState FAILING = new HealthState(1, NOW, 0);
+    private static final HealthState STALE = new HealthState(0, NOW.minusSeconds(10), 0);
+
+    private final AdaptiveRoutingStrategy strategy = new AdaptiveRoutingStrategy(RoutingSimulator.defaultProperties(1));
+
+    @Test
+    void prefersDefaultWhileItIsReliable() {
+        assertThat(refreshAndRoute(0, HEALTHY, HEALTHY)).isEqualTo(ProcessorType.DEFAULT);
+    }
+
+    @Test
+    void switchesToFallbackWhenDefaultFails() {
+        assertThat(refreshAndRoute(0, FAILING, HEALTHY)).isEqualTo(ProcessorType.FALLBACK);
+    }
+
+    @Test
+    void staleHealthDataIsNotReliable() {
+        assertThat(refreshAndRoute(0, STALE, HEALTHY)).isEqualTo(ProcessorType.FALLBACK);
+    }
+
+    @Test
+    void keepsDefaultWhenNeitherIsReliable() {
+        assertThat(refreshAndRoute(0, FAILING, FAILING)).isEqualTo(ProcessorType.DEFAULT);
+    }
+
+    @Test
+    void returnsToDefaultOnceItRecovers() {
+        refreshAndRoute(0, FAILING, HEALTHY);
+        assertThat(refreshAndRoute(0, HEALTHY, HEALTHY)).isEqualTo(ProcessorType.DEFAULT);
+    }
+
+    @Test
+    void spillsToFallbackWhenTheQueuePassesTheTrigger() {
+        assertThat(refreshAndRoute(15000, HEALTHY, HEALTHY)).isEqualTo(ProcessorType.DEFAULT);
+        assertThat(refreshAndRoute(15001, HEALTHY, HEALTHY)).isEqualTo(ProcessorType.FALLBACK);
+    }
+
+    @Test
+    void doesNotSpillToAFailingFallback() {
+        assertThat(refreshAndRoute(20000, HEALTHY, FAILING)).isEqualTo(ProcessorType.DEFAULT);
+    }
+
+    @Test
+    void usesTheDefaultsRegisteredByName() {
+        RinhaProperties properties = RoutingSimulator.defaultProperties(1);
+        assertThat(RoutingStrategies.create(properties.routing().strategy(), properties))
+                .isInstanceOf(AdaptiveRoutingStrategy.class)
+                .isNotInstanceOf(DrainTimeRoutingStrategy.class);
+    }
+
+    private ProcessorType refreshAndRoute(long queueSize, HealthState defaultHealth, HealthState fallbackHealth) {
+        RoutingSignals signals = new RoutingSignals(NOW, queueSize, defaultHealth, fallbackHealth, false, false);
+        strategy.refresh(signals);
+        return strategy.route(signals);
+    }
+}
\ No newline at end of file
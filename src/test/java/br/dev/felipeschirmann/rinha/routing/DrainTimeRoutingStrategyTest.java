@@ -0,0 +1,126 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * Cada cenário mede um segundo em que o DEFAULT liquida 1000 pagamentos/s e termina com uma fila dada.
+ * Padrões: alvo de dreno 2000 ms, prazo 30000 ms, taxas 0,05 (DEFAULT) e 0,15 (FALLBACK).
+ */
+class DrainTimeRoutingStrategyTest {
+
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+    private static final int DEFAULT_RATE = 1000;
+
+    @Test
+    void burstTheDefaultDrainsWithinTheDeadlineDoesNotSpillToAPricierFallback() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.15);
+        // 10000 na fila / 1000 por segundo = 10 s de espera, dentro do prazo de 30 s
+        measureOneSecond(strategy, 10_000, false);
+        assertThat(spill(strategy)).isZero();
+        assertThat(projectedWait(strategy)).isEqualTo(10_000);
+        assertThat(routeMany(strategy, 1000, false)).isZero();
+    }
+
+    @Test
+    void spillsToAPricierFallbackOnlyPastTheDeadline() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.15);
+        // 60 s de espera: passa do prazo
+        measureOneSecond(strategy, 60_000, false);
+        assertThat(spill(strategy)).isPositive();
+        assertThat(routeMany(strategy, 1000, false)).isPositive();
+    }
+
+    @Test
+    void withEqualFeesSpillsAsSoonAsTheQueueMissesTheDrainTarget() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.05);
+        // A mesma rajada que não desviava com o FALLBACK mais caro: aqui o desvio é de graça
+        measureOneSecond(strategy, 10_000, false);
+        assertThat(spill(strategy)).isPositive();
+        assertThat(strategy.gauges().get("drain.target.ms").getAsDouble()).isEqualTo(2000);
+    }
+
+    @Test
+    void spillIsAppliedByCreditsWithoutRandomness() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.15);
+        measureOneSecond(strategy, 60_000, false);
+        double fraction = spill(strategy);
+        int payments = 10_000;
+        assertThat((double) routeMany(strategy, payments, false)).isCloseTo(fraction * payments, offset(1.0));
+    }
+
+    @Test
+    void doesNotSpillWhileTheFallbackBreakerIsOpen() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.15);
+        measureOneSecond(strategy, 60_000, false);
+        assertThat(spill(strategy)).isPositive();
+        assertThat(routeMany(strategy, 1000, true)).isZero();
+    }
+
+    @Test
+    void emptyQueueMeansNoSpill() {
+        DrainTimeRoutingStrategy strategy = strategy(0.05, 0.05);
+        measureOneSecond(strategy, 0, false);
+        assertThat(spill(strategy)).isZero();
+        assertThat(strategy.gauges().get("drain.estimate.ms").getAsDouble()).isZero();
+    }
+
+    @Test
+    void eachInstanceOnlyCountsItsShareOfTheClusterQueue() {
+        // Duas instâncias: 40000 no cluster são 20000 para esta, 20 s de espera, dentro do prazo
+        DrainTimeRoutingStrategy strategy = new DrainTimeRoutingStrategy(properties(2, 0.05, 0.15));
+        measureOneSecond(strategy, 40_000, false);
+        assertThat(projectedWait(strategy)).isEqualTo(20_000);
+        assertThat(spill(strategy)).isZero();
+    }
+
+    private static DrainTimeRoutingStrategy strategy(double defaultFee, double fallbackFee) {
+        return new DrainTimeRoutingStrategy(properties(1, defaultFee, fallbackFee));
+    }
+
+    private static RinhaProperties properties(int instances, double defaultFee, double fallbackFee) {
+        return new RinhaProperties(null, null, null, null, null, null, new RinhaProperties.Instance(null, -1, instances),
+                null, null, null, null, null, null, null, new RinhaProperties.Routing(null, 0, 0, 0, 0, defaultFee, fallbackFee),
+                null, null);
+    }
+
+    // Primeiro refresh no instante zero; depois um segundo de pagamentos liquidados no DEFAULT e o refresh que os mede
+    private static void measureOneSecond(DrainTimeRoutingStrategy strategy, long queueAtEnd, boolean fallbackOpen) {
+        strategy.refresh(signals(START, 0, fallbackOpen));
+        for (int i = 0; i < DEFAULT_RATE; i++) {
+            ProcessorType type = strategy.route(signals(START, 0, fallbackOpen));
+            strategy.recordOutcome(type, true);
+        }
+        strategy.refresh(signals(START.plusSeconds(1), queueAtEnd, fallbackOpen));
+    }
+
+    private static int routeMany(DrainTimeRoutingStrategy strategy, int payments, boolean fallbackOpen) {
+        int toFallback = 0;
+        for (int i = 0; i < payments; i++) {
+            if (strategy.route(signals(START.plusSeconds(1), 0, fallbackOpen)) == ProcessorType.FALLBACK) {
+                toFallback++;
+            }
+        }
+        return toFallback;
+    }
+
+    private static RoutingSignals signals(Instant now, long queueSize, boolean fallbackOpen) {
+        HealthState healthy = new HealthState(0, now, 0);
+        return new RoutingSignals(now, queueSize, healthy, healthy, false, fallbackOpen);
+    }
+
+    private static double spill(DrainTimeRoutingStrategy strategy) {
+        return strategy.gauges().get("spill.fraction").getAsDouble();
+    }
+
+    private static double projectedWait(DrainTimeRoutingStrategy strategy) {
+        return strategy.gauges().get("wait.estimate.ms").getAsDouble();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,551 @@
+package br.dev.felipeschirmann.rinha.routing;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.ProcessorType;
+import br.dev.felipeschirmann.rinha.model.dto.HealthState;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Simulador de eventos discretos para comparar estratégias de roteamento em segundos, sem subir o docker.
+ * Reproduz um trace (chegadas de pagamentos e, por processador, fases de latência, taxa de erro e taxa
+ * cobrada) através do mesmo fluxo do PaymentProcessorService: fila FIFO, N pagamentos em voo, circuit
+ * breaker por processador, health check a cada 5 s, timeout com fila de verificação e reenfileiramento.
+ * O tempo é virtual e o gerador de números aleatórios tem semente fixa: o mesmo trace gera o mesmo relatório.
+ * Com --instances N, N instâncias (cada uma com sua estratégia, seus breakers e N pagamentos em voo) retiram
+ * da mesma fila, como as APIs atrás do nginx; o health check é compartilhado, como o do líder.
+ *
+ * Formato do trace (JSON Lines, uma entrada por linha):
+ * <pre>
+ * {"at": 0, "processor": "DEFAULT", "latencyMs": 10, "failureRate": 0.0, "failing": false, "fee": 0.05}
+ * {"at": 0, "payments": 15000, "overMs": 60000, "amount": 19.90}
+ * </pre>
+ * Fases de processador herdam da fase anterior os campos omitidos. Chegadas são distribuídas
+ * uniformemente em [at, at + overMs).
+ *
+ * Uso: RoutingSimulator &lt;trace.jsonl&gt; [--strategies adaptive,drain-time,...] [--workers N] [--instances N] [--seed N] [--verbose]
+ */
+public final class RoutingSimulator {
+
+    // Mesmos valores do resilience4j no application.properties
+    private static final int BREAKER_WINDOW = 50;
+    private static final double BREAKER_FAILURE_RATE = 0.5;
+    private static final long BREAKER_OPEN_MS = 5000;
+    private static final int BREAKER_HALF_OPEN_CALLS = 5;
+    // Mesmo limite do /payments/service-health
+    private static final long HEALTH_PERIOD_MS = 5000;
+    // Round trip ao Redis (BRPOP, LPUSH): também impede que reenfileiramentos girem no mesmo instante
+    private static final long REDIS_RTT_MS = 1;
+    // Espera da verificação quando o processador está marcado como offline
+    private static final long VERIFY_RETRY_MS = 100;
+    // Tempo extra, após a última chegada, para a fila esvaziar antes de encerrar a simulação
+    private static final long DRAIN_GRACE_MS = 60_000;
+    private static final int DEFAULT_WORKERS = 250;
+    private static final Instant EPOCH = Instant.parse("2025-01-01T00:00:00Z");
+
+    public record ProcessorPhase(long at, ProcessorType processor, long latencyMs, double failureRate,
+                                 boolean failing, BigDecimal fee) {
+    }
+
+    public record Arrivals(long at, int payments, long overMs, BigDecimal amount) {
+    }
+
+    public record Trace(List<Arrivals> arrivals, Map<ProcessorType, List<ProcessorPhase>> phases) {
+
+        public static Trace load(Path path) throws IOException {
+            ObjectMapper mapper = new ObjectMapper();
+            List<JsonNode> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(path)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    lines.add(mapper.readTree(line));
+                }
+            }
+            lines.sort(Comparator.comparingLong(node -> node.path("at").asLong()));
+
+            List<Arrivals> arrivals = new ArrayList<>();
+            Map<ProcessorType, List<ProcessorPhase>> phases = new EnumMap<>(ProcessorType.class);
+            Map<ProcessorType, ProcessorPhase> previous = new EnumMap<>(ProcessorType.class);
+            previous.put(ProcessorType.DEFAULT, new ProcessorPhase(0, ProcessorType.DEFAULT, 10, 0, false, new BigDecimal("0.05")));
+            previous.put(ProcessorType.FALLBACK, new ProcessorPhase(0, ProcessorType.FALLBACK, 10, 0, false, new BigDecimal("0.15")));
+            for (ProcessorType type : ProcessorType.values()) {
+                phases.put(type, new ArrayList<>(List.of(previous.get(type))));
+            }
+
+            for (JsonNode node : lines) {
+                long at = node.path("at").asLong();
+                if (node.has("processor")) {
+                    ProcessorType type = ProcessorType.valueOf(node.get("processor").asText().toUpperCase());
+                    ProcessorPhase last = previous.get(type);
+                    double failureRate = node.path("failureRate").asDouble(last.failureRate());
+                    ProcessorPhase phase = new ProcessorPhase(at, type,
+                            node.path("latencyMs").asLong(last.latencyMs()),
+                            failureRate,
+                            node.path("failing").asBoolean(node.has("failureRate") ? failureRate >= 0.5 : last.failing()),
+                            node.has("fee") ? node.get("fee").decimalValue() : last.fee());
+                    phases.get(type).add(phase);
+                    previous.put(type, phase);
+                } else if (node.has("payments")) {
+                    arrivals.add(new Arrivals(at, node.get("payments").asInt(), node.path("overMs").asLong(0),
+                            node.has("amount") ? node.get("amount").decimalValue() : new BigDecimal("19.90")));
+                } else {
+                    throw new IllegalArgumentException("Entrada de trace sem 'processor' nem 'payments': " + node);
+                }
+            }
+            return new Trace(arrivals, phases);
+        }
+    }
+
+    public record Report(String strategy, int payments, long settledDefault, long settledFallback, BigDecimal fees,
+                         double throughputPerSec, long p99Ms, long inconsistent, long unprocessed, long requeues,
+                         long simulatedMs, long wallMs) {
+    }
+
+    private final Trace trace;
+    private final RinhaProperties rinhaProperties;
+    private final int workers;
+    private final long seed;
+
+    // Valores padrão da aplicação, com instances instâncias dividindo a fila
+    static RinhaProperties defaultProperties(int instances) {
+        return new RinhaProperties(null, null, null, null, null, null, new RinhaProperties.Instance(null, -1, instances),
+                null, null, null, null, null, null, null, null, null, null);
+    }
+
+    public RoutingSimulator(Trace trace, RinhaProperties rinhaProperties, int workers, long seed) {
+        this.trace = trace;
+        this.rinhaProperties = rinhaProperties;
+        this.workers = workers;
+        this.seed = seed;
+    }
+
+    public Report run(RoutingStrategy strategy) {
+        return run(List.of(strategy));
+    }
+
+    // Uma estratégia por instância, todas retirando da mesma fila
+    public Report run(List<RoutingStrategy> strategies) {
+        return new Run(strategies).execute();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Uso: RoutingSimulator <trace.jsonl> [--strategies " + String.join(",", RoutingStrategies.names())
+                    + "] [--workers N] [--instances N] [--seed N] [--verbose]");
+            System.exit(2);
+        }
+        Path tracePath = Path.of(args[0]);
+        List<String> strategies = new ArrayList<>(RoutingStrategies.names());
+        int workers = DEFAULT_WORKERS;
+        int instances = 1;
+        long seed = 42;
+        boolean verbose = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--strategies" -> strategies = Arrays.asList(args[++i].split(","));
+                case "--workers" -> workers = Integer.parseInt(args[++i]);
+                case "--instances" -> instances = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--verbose" -> verbose = true;
+                default -> throw new IllegalArgumentException("Argumento desconhecido: " + args[i]);
+            }
+        }
+        if (!verbose) {
+            silenceLogs();
+        }
+
+        RinhaProperties rinhaProperties = defaultProperties(instances);
+        RoutingSimulator simulator = new RoutingSimulator(Trace.load(tracePath), rinhaProperties, workers, seed);
+
+        System.out.printf("Trace: %s | instâncias: %d | pagamentos em voo por instância: %d | semente: %d%n%n",
+                tracePath, instances, workers, seed);
+        System.out.printf("%-12s %9s %9s %9s %12s %9s %8s %8s %8s %9s %9s%n",
+                "estratégia", "default", "fallback", "pendente", "taxas", "pag/s", "p99 ms", "inconsis", "requeue", "simulado", "real ms");
+        for (String name : strategies) {
+            List<RoutingStrategy> perInstance = new ArrayList<>();
+            for (int i = 0; i < instances; i++) {
+                perInstance.add(RoutingStrategies.create(name, rinhaProperties));
+            }
+            Report r = simulator.run(perInstance);
+            System.out.printf("%-12s %9d %9d %9d %12s %9.1f %8d %8d %8d %8ds %9d%n",
+                    r.strategy(), r.settledDefault(), r.settledFallback(), r.unprocessed(), r.fees().toPlainString(),
+                    r.throughputPerSec(), r.p99Ms(), r.inconsistent(), r.requeues(), r.simulatedMs() / 1000, r.wallMs());
+        }
+    }
+
+    // As estratégias logam cada troca com o relógio real, o que só atrapalha a leitura do relatório
+    private static void silenceLogs() {
+        if (LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME) instanceof ch.qos.logback.classic.Logger root) {
+            root.setLevel(ch.qos.logback.classic.Level.OFF);
+        }
+    }
+
+    private record Event(long at, long seq, Runnable action) {
+    }
+
+    private record Payment(int id, BigDecimal amount, long arrivedAt) {
+    }
+
+    /**
+     * Estado de uma execução: tudo é recriado a cada estratégia para que as comparações partam do mesmo ponto.
+     */
+    private final class Run {
+        private final List<Node> nodes = new ArrayList<>();
+        private final Random random = new Random(seed);
+        private final PriorityQueue<Event> events = new PriorityQueue<>(
+                Comparator.comparingLong(Event::at).thenComparingLong(Event::seq));
+        private final ArrayDeque<Payment> queue = new ArrayDeque<>();
+        private final Map<ProcessorType, HealthState> health = new EnumMap<>(ProcessorType.class);
+        private final Map<ProcessorType, Long> settledCount = new EnumMap<>(ProcessorType.class);
+        private final int totalPayments;
+        // Lado do processador: quem liquidou cada pagamento (0 = ninguém); lado da API: se foi contabilizado
+        private final byte[] settledBy;
+        private final boolean[] counted;
+        private final List<Long> latencies = new ArrayList<>();
+        private final long horizon;
+
+        private long now;
+        private long seq;
+        // Instância que tenta o próximo BRPOP: gira para que nenhuma retire sempre primeiro
+        private int nextNode;
+        private int inFlight;
+        private int pendingVerifications;
+        private int arrived;
+        private long requeues;
+        private BigDecimal fees = BigDecimal.ZERO;
+
+        Run(List<RoutingStrategy> strategies) {
+            for (RoutingStrategy strategy : strategies) {
+                nodes.add(new Node(strategy));
+            }
+            int total = 0;
+            long lastArrival = 0;
+            for (Arrivals arrivals : trace.arrivals()) {
+                total += arrivals.payments();
+                lastArrival = Math.max(lastArrival, arrivals.at() + arrivals.overMs());
+            }
+            this.totalPayments = total;
+            this.settledBy = new byte[total];
+            this.counted = new boolean[total];
+            this.horizon = lastArrival + DRAIN_GRACE_MS;
+            for (ProcessorType type : ProcessorType.values()) {
+                health.put(type, new HealthState(0, EPOCH, 0));
+                settledCount.put(type, 0L);
+            }
+        }
+
+        Report execute() {
+            long wallStart = System.nanoTime();
+            int id = 0;
+            for (Arrivals arrivals : trace.arrivals()) {
+                for (int i = 0; i < arrivals.payments(); i++) {
+                    Payment payment = new Payment(id++, arrivals.amount(), arrivals.at() + i * arrivals.overMs() / arrivals.payments());
+                    schedule(payment.arrivedAt(), () -> arrive(payment));
+                }
+            }
+            schedule(0, this::healthCheck);
+            schedule(1, this::refreshStrategy);
+
+            while (!events.isEmpty() && !finished()) {
+                Event event = events.poll();
+                if (event.at() > horizon) {
+                    break;
+                }
+                now = event.at();
+                event.action().run();
+            }
+            return report((System.nanoTime() - wallStart) / 1_000_000);
+        }
+
+        private boolean finished() {
+            return arrived == totalPayments && queue.isEmpty() && inFlight == 0 && pendingVerifications == 0;
+        }
+
+        private void schedule(long at, Runnable action) {
+            events.add(new Event(at, seq++, action));
+        }
+
+        private void arrive(Payment payment) {
+            arrived++;
+            queue.add(payment);
+            dispatch();
+        }
+
+        // Equivale ao dispatcherLoop de cada instância: cada vaga livre retira um pagamento da fila
+        private void dispatch() {
+            while (!queue.isEmpty()) {
+                Node node = nextIdleNode();
+                if (node == null) {
+                    return;
+                }
+                Payment payment = queue.poll();
+                node.idleWorkers--;
+                inFlight++;
+                schedule(now + REDIS_RTT_MS, () -> process(payment, node));
+            }
+        }
+
+        private Node nextIdleNode() {
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get((nextNode + i) % nodes.size());
+                if (node.idleWorkers > 0) {
+                    nextNode = (nextNode + i + 1) % nodes.size();
+                    return node;
+                }
+            }
+            return null;
+        }
+
+        private void release(Node node) {
+            node.idleWorkers++;
+            inFlight--;
+            dispatch();
+        }
+
+        private void requeue(Payment payment) {
+            requeues++;
+            queue.add(payment);
+        }
+
+        private void process(Payment payment, Node node) {
+            RoutingStrategy strategy = node.strategy;
+            ProcessorType type = strategy.route(signals(node));
+            Breaker breaker = node.breakers.get(type);
+            if (!breaker.tryAcquire(now)) {
+                schedule(now + REDIS_RTT_MS, () -> {
+                    requeue(payment);
+                    release(node);
+                });
+                return;
+            }
+            ProcessorPhase phase = phase(type, now);
+            long timeoutMs = rinhaProperties.deadline().maxMs();
+
+            if (settledBy[payment.id()] != 0) {
+                // Já liquidado antes (timeout seguido de verificação precoce): o processador recusa a duplicata
+                schedule(now + phase.latencyMs(), () -> {
+                    breaker.record(false, now);
+                    release(node);
+                });
+            } else if (random.nextDouble() < phase.failureRate()) {
+                // 5xx: não foi processado. A consistência consulta o GET, recebe 404 e reenfileira
+                schedule(now + Math.min(phase.latencyMs(), timeoutMs), () -> {
+                    breaker.record(false, now);
+                    strategy.recordOutcome(type, false);
+                    schedule(now + phase(type, now).latencyMs(), () -> {
+                        requeue(payment);
+                        release(node);
+                    });
+                });
+            } else if (phase.latencyMs() > timeoutMs) {
+                // O processador conclui depois do prazo; a API desiste e manda para a fila de verificação
+                schedule(now + phase.latencyMs(), () -> settledBy[payment.id()] = (byte) (type.ordinal() + 1));
+                schedule(now + timeoutMs, () -> {
+                    breaker.record(false, now);
+                    strategy.recordOutcome(type, false);
+                    pendingVerifications++;
+                    schedule(now + REDIS_RTT_MS, () -> verify(payment, type, node));
+                    release(node);
+                });
+            } else {
+                schedule(now + phase.latencyMs(), () -> {
+                    settledBy[payment.id()] = (byte) (type.ordinal() + 1);
+                    breaker.record(true, now);
+                    recordSuccess(payment, type, node);
+                    release(node);
+                });
+            }
+        }
+
+        // Equivale ao verifyPaymentConsistency disparado pela fila de verificação
+        private void verify(Payment payment, ProcessorType type, Node node) {
+            if (health.get(type).consecutiveFailures() >= rinhaProperties.processor().failureThreshold()) {
+                schedule(now + VERIFY_RETRY_MS, () -> verify(payment, type, node));
+                return;
+            }
+            schedule(now + phase(type, now).latencyMs(), () -> {
+                pendingVerifications--;
+                if (settledBy[payment.id()] == type.ordinal() + 1) {
+                    recordSuccess(payment, type, node);
+                } else {
+                    requeue(payment);
+                    dispatch();
+                }
+            });
+        }
+
+        private void recordSuccess(Payment payment, ProcessorType type, Node node) {
+            node.strategy.recordOutcome(type, true);
+            counted[payment.id()] = true;
+            settledCount.merge(type, 1L, Long::sum);
+            fees = fees.add(payment.amount().multiply(phase(type, now).fee()));
+            latencies.add(now - payment.arrivedAt());
+        }
+
+        private void healthCheck() {
+            for (ProcessorType type : ProcessorType.values()) {
+                ProcessorPhase phase = phase(type, now);
+                HealthState previous = health.get(type);
+                int failures = phase.failing() ? previous.consecutiveFailures() + 1 : 0;
+                health.put(type, new HealthState(failures, EPOCH.plusMillis(now), (int) phase.latencyMs()));
+            }
+            if (!finished()) {
+                schedule(now + HEALTH_PERIOD_MS, this::healthCheck);
+            }
+        }
+
+        private void refreshStrategy() {
+            for (Node node : nodes) {
+                node.strategy.refresh(signals(node));
+            }
+            if (!finished()) {
+                schedule(now + rinhaProperties.scheduler().strategyDecisionPeriodMs(), this::refreshStrategy);
+            }
+        }
+
+        // A fila é a do cluster, como o getQueueSize somando todos os shards; os breakers são os da instância
+        private RoutingSignals signals(Node node) {
+            return new RoutingSignals(EPOCH.plusMillis(now), queue.size(),
+                    health.get(ProcessorType.DEFAULT), health.get(ProcessorType.FALLBACK),
+                    node.breakers.get(ProcessorType.DEFAULT).isOpen(now), node.breakers.get(ProcessorType.FALLBACK).isOpen(now));
+        }
+
+        private ProcessorPhase phase(ProcessorType type, long at) {
+            List<ProcessorPhase> phases = trace.phases().get(type);
+            ProcessorPhase current = phases.get(0);
+            for (ProcessorPhase phase : phases) {
+                if (phase.at() > at) {
+                    break;
+                }
+                current = phase;
+            }
+            return current;
+        }
+
+        private Report report(long wallMs) {
+            long inconsistent = 0;
+            long unprocessed = 0;
+            for (int i = 0; i < totalPayments; i++) {
+                if (settledBy[i] != 0 && !counted[i]) {
+                    inconsistent++; // O processador cobrou, mas o sumário da API não mostra
+                } else if (settledBy[i] == 0) {
+                    unprocessed++;
+                }
+            }
+            long settled = settledCount.get(ProcessorType.DEFAULT) + settledCount.get(ProcessorType.FALLBACK);
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            long p99 = sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)];
+            double seconds = Math.max(1, now) / 1000.0;
+            return new Report(nodes.get(0).strategy.name(), totalPayments,
+                    settledCount.get(ProcessorType.DEFAULT), settledCount.get(ProcessorType.FALLBACK),
+                    fees.setScale(2, RoundingMode.HALF_EVEN), settled / seconds, p99,
+                    inconsistent, unprocessed, requeues, now, wallMs);
+        }
+    }
+
+    // Uma API: estratégia, breakers locais e vagas para pagamentos em voo
+    private final class Node {
+        private final RoutingStrategy strategy;
+        private final Map<ProcessorType, Breaker> breakers = new EnumMap<>(ProcessorType.class);
+        private int idleWorkers = workers;
+
+        Node(RoutingStrategy strategy) {
+            this.strategy = strategy;
+            for (ProcessorType type : ProcessorType.values()) {
+                breakers.put(type, new Breaker());
+            }
+        }
+    }
+
+    /**
+     * Circuit breaker por contagem, com as mesmas transições do resilience4j:
+     * CLOSED abre quando a janela cheia passa da taxa de falha; OPEN vira HALF_OPEN na primeira
+     * chamada após a espera; HALF_OPEN fecha ou reabre depois das chamadas de teste.
+     */
+    private static final class Breaker {
+        private enum State {CLOSED, OPEN, HALF_OPEN}
+
+        private State state = State.CLOSED;
+        private final boolean[] window = new boolean[BREAKER_WINDOW];
+        private int size;
+        private int next;
+        private int failures;
+        private long openedAt;
+        private int halfOpenPermits;
+        private int halfOpenCalls;
+        private int halfOpenFailures;
+
+        boolean tryAcquire(long now) {
+            if (state == State.OPEN && now - openedAt >= BREAKER_OPEN_MS) {
+                state = State.HALF_OPEN;
+                halfOpenPermits = BREAKER_HALF_OPEN_CALLS;
+                halfOpenCalls = 0;
+                halfOpenFailures = 0;
+            }
+            if (state == State.OPEN) {
+                return false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits == 0) {
+                    return false;
+                }
+                halfOpenPermits--;
+            }
+            return true;
+        }
+
+        void record(boolean success, long now) {
+            if (state == State.OPEN) {
+                return; // Resultado atrasado de uma chamada feita antes de abrir
+            }
+            if (state == State.HALF_OPEN) {
+                halfOpenCalls++;
+                if (!success) halfOpenFailures++;
+                if (halfOpenCalls == BREAKER_HALF_OPEN_CALLS) {
+                    if (halfOpenFailures >= BREAKER_HALF_OPEN_CALLS * BREAKER_FAILURE_RATE) {
+                        open(now);
+                    } else {
+                        state = State.CLOSED;
+                        size = next = failures = 0;
+                    }
+                }
+                return;
+            }
+            if (size == BREAKER_WINDOW && !window[next]) {
+                failures--;
+            }
+            window[next] = success;
+            if (!success) failures++;
+            next = (next + 1) % BREAKER_WINDOW;
+            size = Math.min(BREAKER_WINDOW, size + 1);
+            if (size == BREAKER_WINDOW && failures >= BREAKER_WINDOW * BREAKER_FAILURE_RATE) {
+                open(now);
+            }
+        }
+
+        boolean isOpen(long now) {
+            return state == State.OPEN && now - openedAt < BREAKER_OPEN_MS;
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+}
\ No newline at end of file
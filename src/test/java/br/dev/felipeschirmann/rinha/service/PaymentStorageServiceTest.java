@@ -0,0 +1,68 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * O shard de um pagamento tem de ser o mesmo na API Java e no enqueue_payment.lua (ngx.crc32_long % QUEUE_SHARDS).
+ * Os valores esperados são o CRC-32 padrão (zlib, o mesmo do ngx.crc32_long) de cada id.
+ */
+class PaymentStorageServiceTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "123456789, 3421780262",
+            "4a7901b8-7d26-4d9d-aa19-4dc1c7cf60b3, 3848235907",
+            "21636369-8b52-4b4a-97b7-50923ceb3ffd, 844046100",
+            "781f9c58-d664-4fa9-a8a8-529f035efa25, 37502981",
+            "795b929e-9a9a-40fd-aa7b-5bf55eb561a4, 2324085031"
+    })
+    void shardOfMatchesTheLuaCrc32(String correlationId, long crc32) {
+        for (int shards = 1; shards <= 8; shards++) {
+            assertThat(PaymentStorageService.shardOf(correlationId, shards)).isEqualTo((int) (crc32 % shards));
+        }
+    }
+
+    @Test
+    void shardOfIgnoresCase() {
+        String id = "4a7901b8-7d26-4d9d-aa19-4dc1c7cf60b3";
+        assertThat(PaymentStorageService.shardOf(id.toUpperCase(Locale.ROOT), 4))
+                .isEqualTo(PaymentStorageService.shardOf(id, 4));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void malformedPaymentIsDroppedWithoutPausingTheDispatcher() throws Exception {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(List.of(
+                "payments:0:queue:0".getBytes(StandardCharsets.UTF_8),
+                "{\"correlationId\":\"4a7901b8-7d26-4d9d-aa19-4dc1c7cf60b3\",\"amount\":1,".getBytes(StandardCharsets.UTF_8)));
+        PaymentKeyspace keyspace = mock(PaymentKeyspace.class);
+        when(keyspace.queueKey(anyLong(), anyInt())).thenReturn("payments:0:queue:0");
+        RinhaProperties properties = new RinhaProperties(null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null);
+        PaymentStorageService storage = new PaymentStorageService(redisTemplate, new ObjectMapper(),
+                new PaymentJournal(properties, keyspace), keyspace, properties);
+
+        long start = System.nanoTime();
+        assertThat(storage.takePayment()).isNull();
+        // O erro de Redis pausa 1 s antes de tentar de novo; uma mensagem ruim não
+        assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(500);
+    }
+}
\ No newline at end of file
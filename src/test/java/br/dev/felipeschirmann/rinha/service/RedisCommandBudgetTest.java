@@ -0,0 +1,149 @@
+package br.dev.felipeschirmann.rinha.service;
+
+import br.dev.felipeschirmann.rinha.config.RinhaProperties;
+import br.dev.felipeschirmann.rinha.model.PaymentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisListCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Orçamento de comandos Redis no caminho de um pagamento, na JVM: o RedisTemplate usa a fábrica instrumentada
+ * pelo {@link RedisCommandBudget}, sobre uma conexão simulada, e o pagamento passa pelo {@link PaymentStorageService}
+ * como no despachante (BRPOP dentro do escopo, reenfileiramento quando o processador recusa).
+ */
+class RedisCommandBudgetTest {
+
+    private static final double MAX_COMMANDS_PER_PAYMENT = 8;
+
+    private RedisCommandBudget budget;
+    private PaymentStorageService storage;
+    private RedisListCommands listCommands;
+    private final List<byte[]> queue = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        RinhaProperties properties = new RinhaProperties(null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null, null, new RinhaProperties.RedisBudget(true, MAX_COMMANDS_PER_PAYMENT), null);
+        budget = new RedisCommandBudget(properties, new SimpleMeterRegistry());
+
+        listCommands = mock(RedisListCommands.class);
+        when(listCommands.bRPop(anyInt(), any(byte[][].class))).thenAnswer(invocation ->
+                queue.isEmpty() ? null : List.of("queue".getBytes(StandardCharsets.UTF_8), queue.remove(0)));
+        when(listCommands.lPush(any(byte[].class), any(byte[][].class))).thenReturn(1L);
+        when(listCommands.lLen(any(byte[].class))).thenReturn(0L);
+
+        // Pipeline simulado: isPipelined reflete openPipeline/closePipeline, como na conexão real
+        AtomicBoolean pipelined = new AtomicBoolean();
+        RedisConnection connection = mock(RedisConnection.class);
+        when(connection.listCommands()).thenReturn(listCommands);
+        when(connection.isPipelined()).thenAnswer(invocation -> pipelined.get());
+        doAnswer(invocation -> {
+            pipelined.set(true);
+            return null;
+        }).when(connection).openPipeline();
+        when(connection.closePipeline()).thenAnswer(invocation -> {
+            pipelined.set(false);
+            return List.of();
+        });
+        RedisConnectionFactory factory = mock(RedisConnectionFactory.class);
+        when(factory.getConnection()).thenReturn(connection);
+
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(budget.wrap(factory));
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+
+        PaymentKeyspace keyspace = mock(PaymentKeyspace.class);
+        when(keyspace.queueKey(any(Long.class), anyInt())).thenAnswer(invocation ->
+                "payments:" + invocation.getArgument(0) + ":queue:" + invocation.getArgument(1));
+        when(keyspace.verifyQueueKey()).thenReturn("payments:0:verify");
+        storage = new PaymentStorageService(template, new ObjectMapper(), new PaymentJournal(properties, keyspace),
+                keyspace, properties);
+    }
+
+    @Test
+    void settledPaymentStaysWithinBudget() throws Exception {
+        enqueue(new PaymentRequest(UUID.randomUUID(), new BigDecimal("19.90")));
+
+        RedisCommandBudget.Scope scope = budget.begin(RedisCommandBudget.PAYMENT);
+        assertThat(storage.takePayment()).isNotNull();
+        budget.mark("settled");
+        budget.end(scope);
+
+        Map<String, Object> report = budget.report();
+        assertThat(report.get("payments")).isEqualTo(1L);
+        assertThat((double) report.get("commandsPerPayment")).isLessThanOrEqualTo(MAX_COMMANDS_PER_PAYMENT);
+        assertThat(report.get("withinBudget")).isEqualTo(true);
+    }
+
+    @Test
+    void requeuedPaymentCountsTheTakeAndThePush() throws Exception {
+        PaymentRequest payment = new PaymentRequest(UUID.randomUUID(), new BigDecimal("19.90"));
+        enqueue(payment);
+
+        RedisCommandBudget.Scope scope = budget.begin(RedisCommandBudget.PAYMENT);
+        assertThat(storage.takePayment()).isEqualTo(payment);
+        budget.mark("requeued");
+        storage.recordPayment(payment);
+        budget.end(scope);
+
+        Map<String, Object> report = budget.report();
+        assertThat(report.get("commandsPerPayment")).isEqualTo(2.0);
+        assertThat(operations(report, "payment:requeued")).containsOnlyKeys("brpop", "lpush");
+        assertThat(report.get("withinBudget")).isEqualTo(true);
+    }
+
+    @Test
+    void pipelineCountsEveryCommandButOneRoundTrip() {
+        storage.getQueueSize();
+
+        Map<String, Object> background = outcome(budget.report(), "background");
+        assertThat(background.get("commands")).isEqualTo(4L);
+        assertThat(background.get("roundTrips")).isEqualTo(1L);
+    }
+
+    @Test
+    void commandsOutsideAScopeDoNotCountAsPayments() {
+        storage.getQueueSize();
+
+        Map<String, Object> report = budget.report();
+        assertThat(report.get("payments")).isEqualTo(0L);
+        assertThat(report.get("commandsPerPayment")).isEqualTo(0.0);
+    }
+
+    private void enqueue(PaymentRequest payment) throws Exception {
+        queue.add(new ObjectMapper().writeValueAsBytes(payment));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> outcome(Map<String, Object> report, String key) {
+        return (Map<String, Object>) ((Map<String, Object>) report.get("byOutcome")).get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> operations(Map<String, Object> report, String key) {
+        return (Map<String, Object>) outcome(report, key).get("operations");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package br.dev.felipeschirmann.rinha.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchRecordSplitterTest {
+
+    private static final String A = "{\"correlationId\":\"a\",\"amount\":1}";
+    private static final String B = "{\"correlationId\":\"b\",\"amount\":2}";
+
+    @Test
+    void splitsNdjson() {
+        assertThat(split(A + "\n" + B + "\n")).containsExactly(A, B);
+    }
+
+    @Test
+    void splitsAJsonArray() {
+        assertThat(split("[ " + A + ",\n " + B + " ]")).containsExactly(A, B);
+    }
+
+    @Test
+    void ignoresBracesInsideStrings() {
+        String record = "{\"note\":\"} { \\\" }\",\"amount\":1}";
+        assertThat(split(record + "\n" + A)).containsExactly(record, A);
+    }
+
+    @Test
+    void keepsNestedObjectsInTheirRecord() {
+        String record = "{\"meta\":{\"a\":{\"b\":1}},\"amount\":1}";
+        assertThat(split(record + B)).containsExactly(record, B);
+    }
+
+    @Test
+    void recordsSplitAcrossChunksAreReassembled() {
+        BatchRecordSplitter splitter = new BatchRecordSplitter(4096);
+        String body = A + "\n" + B;
+        List<String> records = new ArrayList<>();
+        // Um byte por vez, como se cada um chegasse num buffer separado
+        for (byte b : body.getBytes(StandardCharsets.UTF_8)) {
+            splitter.feed(new byte[]{b}).forEach(r -> records.add(text(r)));
+        }
+        splitter.finish().forEach(r -> records.add(text(r)));
+        assertThat(records).containsExactly(A, B);
+    }
+
+    @Test
+    void strayBytesBecomeOneInvalidRecordInPlace() {
+        assertThat(split(A + "\ngarbage\n" + B)).containsExactly(A, "<invalid>", B);
+    }
+
+    @Test
+    void oversizedRecordIsInvalidAndTheNextOneStillParses() {
+        String big = "{\"padding\":\"" + "x".repeat(100) + "\"}";
+        BatchRecordSplitter splitter = new BatchRecordSplitter(64);
+        List<String> records = new ArrayList<>();
+        splitter.feed((big + "\n" + A).getBytes(StandardCharsets.UTF_8)).forEach(r -> records.add(text(r)));
+        assertThat(records).containsExactly("<invalid>", A);
+    }
+
+    @Test
+    void objectCutAtTheEndOfTheBodyIsInvalid() {
+        assertThat(split(A + "\n{\"correlationId\":\"b\"")).containsExactly(A, "<invalid>");
+    }
+
+    @Test
+    void emptyBodyHasNoRecords() {
+        assertThat(split("")).isEmpty();
+        assertThat(split("[]")).isEmpty();
+    }
+
+    private static List<String> split(String body) {
+        BatchRecordSplitter splitter = new BatchRecordSplitter(4096);
+        List<String> records = new ArrayList<>();
+        splitter.feed(body.getBytes(StandardCharsets.UTF_8)).forEach(r -> records.add(text(r)));
+        splitter.finish().forEach(r -> records.add(text(r)));
+        return records;
+    }
+
+    private static String text(byte[] record) {
+        return record == BatchRecordSplitter.INVALID ? "<invalid>" : new String(record, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package br.dev.felipeschirmann.rinha.web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PaymentPayloadScannerTest {
+
+    private static final String ID = "4a7901b8-7d26-4d9d-aa19-4dc1c7cf60b3";
+
+    @Test
+    void returnsTheCorrelationIdOfAValidBody() {
+        assertThat(scan("{\"correlationId\":\"" + ID + "\",\"amount\":19.90}")).isEqualTo(ID);
+    }
+
+    @Test
+    void acceptsWhitespaceAndAnyKeyOrder() {
+        assertThat(scan("{\n  \"amount\" : 1e2 ,\n  \"correlationId\" : \"" + ID + "\"\n}")).isEqualTo(ID);
+    }
+
+    @Test
+    void keepsTheCaseOfTheCorrelationId() {
+        String upper = ID.toUpperCase();
+        assertThat(scan("{\"correlationId\":\"" + upper + "\",\"amount\":1}")).isEqualTo(upper);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"amount\":19.90}",
+            "{\"correlationId\":\"" + ID + "\"}",
+            "{\"correlationId\":\"not-a-uuid\",\"amount\":19.90}",
+            "{\"correlationId\":\"4a7901b8x7d26-4d9d-aa19-4dc1c7cf60b3\",\"amount\":19.90}",
+            "{\"correlationId\":\"4a7901b8-7d26-4d9d-aa19-4dc1c7cf60bz\",\"amount\":19.90}",
+            "{\"correlationId\":" + "12345" + ",\"amount\":19.90}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":\"19.90\"}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":19.}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1e}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":-}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":19.90",
+            ""
+    })
+    void rejectsInvalidBodies(String body) {
+        assertThat(scan(body)).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // Objeto que não fecha: os campos estão certos, mas o Jackson falharia ao desserializar
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1,",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1,\"note\":\"}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1,\"tags\":[1,2}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1,\"tags\":{]}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1}}",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1} {}",
+            "[{\"correlationId\":\"" + ID + "\",\"amount\":1}]",
+            "{\"correlationId\":\"" + ID + "\",\"amount\":1,\"note\":\"a\nb\"}"
+    })
+    void rejectsStructurallyInvalidJson(String body) {
+        assertThat(scan(body)).isNull();
+    }
+
+    @Test
+    void acceptsNestedValuesAndEscapedQuotes() {
+        String body = "{\"note\":\"a \\\"quoted\\\" } value\",\"tags\":[{\"a\":[1,2]}],"
+                + "\"correlationId\":\"" + ID + "\",\"amount\":1}\n";
+        assertThat(scan(body)).isEqualTo(ID);
+    }
+
+    private static String scan(String body) {
+        return PaymentPayloadScanner.scan(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file